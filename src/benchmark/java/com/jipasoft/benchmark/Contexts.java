@@ -0,0 +1,97 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.jipasoft.config.Application;
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+import com.jipasoft.util.Profiles;
+
+/**
+ * Boots the application without a web server for the benchmarks. The external
+ * databases are replaced by in-process stand-ins:
+ * <ul>
+ * <li>{@code postgres}: H2 in PostgreSQL compatibility mode</li>
+ * <li>{@code mongo}: embedded MongoDB on a random port</li>
+ * </ul>
+ * 
+ * @author Julius Krah
+ *
+ */
+final class Contexts {
+	static final String PASSWORD = "$2a$10$mE.qmcV0mFU5NcKh73TZx.z4ueI/.bDWbj0T1BYyqP481kGGarKLG";
+
+	private Contexts() {
+	}
+
+	static ConfigurableApplicationContext start(String profile, String... properties) {
+		List<String> props = new ArrayList<>(Arrays.asList(properties));
+		props.add("logging.level.root=warn");
+		props.add("logging.level.com.jipasoft=warn");
+		// the same strength on every machine instead of a calibrated one
+		props.add("hashing.strength=10");
+		if (Profiles.MONGO.equals(profile))
+			props.add("spring.data.mongodb.port=0");
+		else
+			props.add("spring.autoconfigure.exclude=" + EmbeddedMongoAutoConfiguration.class.getName());
+		if (Profiles.POSTGRES.equals(profile)) {
+			props.add("spring.datasource.hikari.jdbc-url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+			props.add("spring.datasource.hikari.driver-class-name=org.h2.Driver");
+			props.add("spring.jpa.database=h2");
+		}
+		//@formatter:off
+		return new SpringApplicationBuilder(Application.class)
+				.web(WebApplicationType.NONE)
+				.profiles(profile)
+				.properties(props.toArray(new String[0]))
+				.run();
+		//@formatter:on
+	}
+
+	/**
+	 * Activated users {@code bench0} to {@code bench<count - 1>} with the
+	 * {@code ROLE_USER} authority
+	 */
+	static List<User> users(int count) {
+		List<User> users = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			users.add(user("bench" + i));
+		return users;
+	}
+
+	static User user(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@localhost");
+		user.setFirstName("Bench");
+		user.setLastName("Mark");
+		user.setActivated(true);
+		user.setCreatedBy("system");
+		user.setPassword(PASSWORD);
+		user.setAuthorities(new HashSet<>(Arrays.asList(new Authority("ROLE_USER"))));
+		return user;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserDTO;
+import com.jipasoft.service.Impl.PasswordHashingServiceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link UserDTO#createUser} at several BCrypt strengths, hashing on a
+ * single thread hashing pool. The application encoder uses strength 10
+ * 
+ * @author Julius Krah
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CreateUserBenchmark {
+	@Param({ "4", "10", "12" })
+	public int strength;
+
+	private PasswordHashingServiceImpl hashing;
+	private UserDTO userDTO;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		hashing = new PasswordHashingServiceImpl(new BCryptPasswordEncoder(strength), new SimpleMeterRegistry(), 1, 1);
+		userDTO = new UserDTO();
+		userDTO.setLogin("bench");
+		userDTO.setPassword("password");
+		userDTO.setFirstName("Bench");
+		userDTO.setLastName("Mark");
+		userDTO.setEmail("bench@localhost");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		hashing.destroy();
+	}
+
+	@Benchmark
+	public User createUser() {
+		return userDTO.createUser(hashing);
+	}
+}
@@ -0,0 +1,335 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jipasoft.config.Application;
+import com.jipasoft.util.Profiles;
+
+/**
+ * HTTP load test of the {@code AccountController} endpoints. Each virtual
+ * user signs in with its own session and runs a weighted mix of requests,
+ * sending the CSRF token the way the pages do. Latencies are recorded per
+ * endpoint after the warmup and reported as p50/p99/p999 and throughput, on
+ * the console and in {@code target/load-test.json}.
+ * <p>
+ * Without {@code --url} the application is started in-process on the
+ * {@code h2} profile and a random port. Options:
+ * {@code --url= --users=16 --duration=60 --warmup=10 --login=admin --password=admin}
+ * </p>
+ * <p>
+ * All virtual users sign in with the same login from the same address, far
+ * above the {@code login-throttle} limits. The in-process application runs
+ * with {@code login-throttle.enabled=false}; start the application behind
+ * {@code --url} with it as well, or with raised limits.
+ * </p>
+ * 
+ * <pre>
+ * mvnw -P benchmark test-compile exec:exec@load-test -Dload.args="--users=32"
+ * </pre>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class LoadTest {
+	private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"\\s+(?:content|value)=\"([^\"]+)\"");
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	static final String LOGIN = "POST /login";
+	static final String FIND_ALL = "GET /user/find_all";
+	static final String EDIT = "GET /user/update/{id}";
+	static final String ADD = "POST /user/add";
+	static final String UPDATE = "PATCH /user/add";
+	static final String DELETE = "DELETE /user/delete/{id}";
+	static final List<String> ENDPOINTS = Arrays.asList(LOGIN, FIND_ALL, EDIT, ADD, UPDATE, DELETE);
+
+	private final String url;
+	private final String login;
+	private final String password;
+	private final CloseableHttpClient client;
+	private final Map<String, Recorder> latencies = new LinkedHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+	private volatile boolean running = true;
+
+	LoadTest(String url, String login, String password, int users) {
+		this.url = url;
+		this.login = login;
+		this.password = password;
+		this.client = HttpClients.custom().disableRedirectHandling().setMaxConnTotal(users).setMaxConnPerRoute(users).build();
+		for (String endpoint : ENDPOINTS) {
+			latencies.put(endpoint, new Recorder(3));
+			errors.put(endpoint, new AtomicLong());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args)
+			if (arg.startsWith("--") && arg.contains("="))
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		int users = Integer.parseInt(options.getOrDefault("users", "16"));
+		int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+		int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+
+		ConfigurableApplicationContext context = null;
+		String url = options.get("url");
+		if (url == null) {
+			//@formatter:off
+			context = new SpringApplicationBuilder(Application.class)
+					.profiles(Profiles.H2)
+					.properties("server.port=0", "logging.level.root=warn", "logging.level.com.jipasoft=warn",
+							"login-throttle.enabled=false")
+					.run();
+			//@formatter:on
+			url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+		}
+		try {
+			LoadTest test = new LoadTest(url, options.getOrDefault("login", "admin"), options.getOrDefault("password", "admin"), users);
+			test.run(users, warmup, duration);
+		} finally {
+			if (context != null)
+				context.close();
+		}
+	}
+
+	void run(int users, int warmup, int duration) throws InterruptedException, IOException {
+		System.out.printf("Load test of %s with %d users: %ds warmup, %ds measurement%n", url, users, warmup, duration);
+		ExecutorService executor = Executors.newFixedThreadPool(users);
+		for (int i = 0; i < users; i++) {
+			String prefix = "lt" + i + "x";
+			executor.execute(() -> new VirtualUser(prefix).run());
+		}
+		TimeUnit.SECONDS.sleep(warmup);
+		// discard the warmup
+		latencies.values().forEach(Recorder::getIntervalHistogram);
+		errors.values().forEach(count -> count.set(0));
+		long start = System.nanoTime();
+		TimeUnit.SECONDS.sleep(duration);
+		Map<String, Histogram> histograms = new LinkedHashMap<>();
+		latencies.forEach((endpoint, recorder) -> histograms.put(endpoint, recorder.getIntervalHistogram()));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		running = false;
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+		client.close();
+		report(histograms, seconds);
+	}
+
+	private void report(Map<String, Histogram> histograms, double seconds) throws IOException {
+		Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+		System.out.printf("%-26s %9s %9s %9s %9s %9s %9s %7s%n", "endpoint", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms",
+				"errors");
+		histograms.forEach((endpoint, histogram) -> {
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("count", histogram.getTotalCount());
+			result.put("throughput", histogram.getTotalCount() / seconds);
+			result.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+			result.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+			result.put("p999", histogram.getValueAtPercentile(99.9) / 1000.0);
+			result.put("max", histogram.getMaxValue() / 1000.0);
+			result.put("errors", errors.get(endpoint).get());
+			results.put(endpoint, result);
+			System.out.printf("%-26s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7d%n", endpoint, result.get("count"), result.get("throughput"),
+					result.get("p50"), result.get("p99"), result.get("p999"), result.get("max"), result.get("errors"));
+		});
+		File file = new File("target/load-test.json");
+		file.getParentFile().mkdirs();
+		MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, results);
+	}
+
+	/**
+	 * A browser session. Users added by this session get logins starting
+	 * with its prefix, and only those are updated and deleted
+	 */
+	private class VirtualUser implements Runnable {
+		private final String prefix;
+		private final List<String> ids = new ArrayList<>();
+		private final List<String> own = new ArrayList<>();
+		private HttpClientContext session;
+		private String csrf;
+		private long added;
+
+		VirtualUser(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					if (session == null) {
+						signIn();
+						continue;
+					}
+					int pick = ThreadLocalRandom.current().nextInt(100);
+					if (pick < 5)
+						signIn();
+					else if (pick < 45 || ids.isEmpty())
+						findAll();
+					else if (pick < 65)
+						edit(ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+					else if (pick < 80 || own.isEmpty())
+						add();
+					else if (pick < 90)
+						update(own.get(ThreadLocalRandom.current().nextInt(own.size())));
+					else
+						delete(own.remove(own.size() - 1));
+				} catch (IOException | RuntimeException e) {
+					// start over with a new session
+					session = null;
+				}
+			}
+		}
+
+		private void signIn() throws IOException {
+			session = HttpClientContext.create();
+			session.setCookieStore(new BasicCookieStore());
+			csrf = csrf(body(execute(null, new HttpGet(url + "/login"))));
+			HttpPost post = new HttpPost(url + "/login");
+			post.setEntity(form("username", login, "password", password, "_csrf", csrf));
+			HttpResponse response = execute(LOGIN, post);
+			body(response);
+			String location = response.getFirstHeader("Location") == null ? "" : response.getFirstHeader("Location").getValue();
+			expect(LOGIN, response, 302, !location.contains("error"));
+			// the token changes on authentication
+			csrf = csrf(body(execute(null, new HttpGet(url + "/"))));
+		}
+
+		private void findAll() throws IOException {
+			HttpResponse response = execute(FIND_ALL, new HttpGet(url + "/user/find_all"));
+			String body = body(response);
+			if (!expect(FIND_ALL, response, 200, true))
+				return;
+			ids.clear();
+			own.clear();
+			for (JsonNode user : MAPPER.readTree(body)) {
+				ids.add(user.get("id").asText());
+				if (user.get("login").asText().startsWith(prefix))
+					own.add(user.get("id").asText());
+			}
+		}
+
+		private void edit(String id) throws IOException {
+			HttpResponse response = execute(EDIT, new HttpGet(url + "/user/update/" + id));
+			body(response);
+			expect(EDIT, response, 200, true);
+		}
+
+		private void add() throws IOException {
+			String name = prefix + added++;
+			HttpPost post = new HttpPost(url + "/user/add");
+			post.setEntity(form("login", name, "password", "password", "firstName", "Load", "lastName", "Test", "email",
+					name + "@localhost", "activated", "true", "_csrf", csrf));
+			HttpResponse response = execute(ADD, post);
+			body(response);
+			expect(ADD, response, 302, true);
+		}
+
+		private void update(String id) throws IOException {
+			HttpPost post = new HttpPost(url + "/user/add");
+			String name = prefix + "u" + added++;
+			post.setEntity(form("_method", "patch", "id", id, "login", name, "password", "unchanged", "firstName", "Load", "lastName",
+					"Updated", "email", name + "@localhost", "activated", "true", "_csrf", csrf));
+			HttpResponse response = execute(UPDATE, post);
+			body(response);
+			expect(UPDATE, response, 302, true);
+		}
+
+		private void delete(String id) throws IOException {
+			HttpDelete delete = new HttpDelete(url + "/user/delete/" + id);
+			delete.setHeader("X-CSRF-TOKEN", csrf);
+			HttpResponse response = execute(DELETE, delete);
+			body(response);
+			ids.remove(id);
+			expect(DELETE, response, 200, true);
+		}
+
+		private HttpResponse execute(String endpoint, HttpUriRequest request) throws IOException {
+			long start = System.nanoTime();
+			HttpResponse response = client.execute(request, session);
+			if (endpoint != null)
+				latencies.get(endpoint).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			return response;
+		}
+	}
+
+	private boolean expect(String endpoint, HttpResponse response, int status, boolean valid) {
+		boolean ok = response.getStatusLine().getStatusCode() == status && valid;
+		if (!ok)
+			errors.get(endpoint).incrementAndGet();
+		return ok;
+	}
+
+	private static String body(HttpResponse response) throws IOException {
+		return response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+	}
+
+	private static String csrf(String page) {
+		Matcher matcher = CSRF.matcher(page);
+		if (!matcher.find())
+			throw new IllegalStateException("No CSRF token in page");
+		return matcher.group(1);
+	}
+
+	private static UrlEncodedFormEntity form(String... pairs) {
+		List<NameValuePair> parameters = new ArrayList<>();
+		for (int i = 0; i < pairs.length; i += 2)
+			parameters.add(new BasicNameValuePair(pairs[i], pairs[i + 1]));
+		try {
+			return new UrlEncodedFormEntity(parameters, "UTF-8");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
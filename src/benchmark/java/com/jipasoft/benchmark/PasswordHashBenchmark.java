@@ -0,0 +1,72 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jipasoft.config.security.UpgradingPasswordEncoder;
+
+/**
+ * Hashes per second of the {@link UpgradingPasswordEncoder} at each BCrypt
+ * strength around the calibrated ones, and of a login matching a password.
+ * Run with {@code -t <threads>} to see how the throughput scales with the size
+ * of the hashing pool
+ * 
+ * @author Julius Krah
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PasswordHashBenchmark {
+	@Param({ "8", "9", "10", "11", "12", "13" })
+	public int strength;
+
+	private UpgradingPasswordEncoder encoder;
+	private String hash;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		encoder = new UpgradingPasswordEncoder(strength);
+		hash = encoder.encode("password");
+	}
+
+	@Benchmark
+	public String encode() {
+		return encoder.encode("password");
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return encoder.matches("password", hash);
+	}
+}
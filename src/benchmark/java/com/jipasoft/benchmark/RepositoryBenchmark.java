@@ -0,0 +1,195 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserUpdate;
+import com.jipasoft.repository.UserRepository;
+import com.jipasoft.util.Profiles;
+import com.jipasoft.util.UserGenerator;
+
+/**
+ * {@link UserRepository} hot paths of every profile. Each call runs in a
+ * transaction like the {@code AccountService} facade does, read-only for the
+ * finders. The {@code memory} profile is the baseline without a database.
+ * Lookups follow the skewed access pattern of {@link UserGenerator#sample}
+ * 
+ * @author Julius Krah
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+	private static final int BATCH = 1000;
+
+	@Param({ Profiles.MEMORY, Profiles.H2, Profiles.POSTGRES, Profiles.MONGO })
+	public String profile;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final Queue<String> saved = new ConcurrentLinkedQueue<>();
+	private final AtomicLong batches = new AtomicLong();
+	private ConfigurableApplicationContext context;
+	private UserRepository userRepository;
+	private TransactionTemplate reads;
+	private TransactionTemplate writes;
+	private UserGenerator generator;
+	private List<String> logins;
+	private List<String> ids;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = Contexts.start(profile);
+		userRepository = context.getBean(UserRepository.class);
+		PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+		writes = new TransactionTemplate(transactionManager);
+		reads = new TransactionTemplate(transactionManager);
+		reads.setReadOnly(true);
+
+		generator = new UserGenerator(42, context.getBean(PasswordEncoder.class), 4);
+		List<User> users = generator.generate(0, size);
+		logins = users.stream().map(User::getLogin).collect(Collectors.toList());
+		writes.execute(status -> {
+			userRepository.saveAll(users);
+			return null;
+		});
+		ids = users.stream().map(User::getId).collect(Collectors.toList());
+	}
+
+	/**
+	 * Keeps the data size constant across iterations
+	 */
+	@TearDown(Level.Iteration)
+	public void removeSaved() {
+		List<String> batch = saved.stream().collect(Collectors.toList());
+		saved.clear();
+		writes.execute(status -> {
+			userRepository.deleteAllById(batch);
+			return null;
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<User> findOneByLogin() {
+		String login = logins.get((int) UserGenerator.sample(ThreadLocalRandom.current(), size));
+		return reads.execute(status -> userRepository.findOneByLogin(login));
+	}
+
+	@Benchmark
+	public Optional<User> findOneById() {
+		String id = ids.get((int) UserGenerator.sample(ThreadLocalRandom.current(), size));
+		return reads.execute(status -> userRepository.findOneById(id));
+	}
+
+	@Benchmark
+	public User save() {
+		User user = Contexts.user("saved" + sequence.incrementAndGet());
+		writes.execute(status -> {
+			userRepository.save(user);
+			return null;
+		});
+		saved.add(user.getId());
+		return user;
+	}
+
+	/**
+	 * Load-modify-save of one user, as {@code PATCH /user/add} did before
+	 * {@link UserRepository#update}
+	 */
+	@Benchmark
+	public User findAndSave() {
+		String id = ids.get((int) UserGenerator.sample(ThreadLocalRandom.current(), size));
+		return writes.execute(status -> {
+			User user = userRepository.findOneById(id).get();
+			user.setFirstName("Saved");
+			user.setLastModifiedDate(ZonedDateTime.now());
+			userRepository.save(user);
+			return user;
+		});
+	}
+
+	@Benchmark
+	public int update() {
+		String id = ids.get((int) UserGenerator.sample(ThreadLocalRandom.current(), size));
+		UserUpdate update = new UserUpdate(id).firstName("Updated").lastModified("system", ZonedDateTime.now());
+		return writes.execute(status -> userRepository.update(update));
+	}
+
+	/**
+	 * {@link UserRepository#saveAll} of a batch of new users followed by
+	 * {@link UserRepository#deleteAllById} of the same batch, scored per user
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void saveAllAndDeleteAllById() {
+		long from = size + batches.getAndIncrement() * BATCH;
+		List<User> users = generator.generate(from, from + BATCH);
+		writes.execute(status -> {
+			userRepository.saveAll(users);
+			return null;
+		});
+		List<String> batch = users.stream().map(User::getId).collect(Collectors.toList());
+		writes.execute(status -> {
+			userRepository.deleteAllById(batch);
+			return null;
+		});
+	}
+
+	@Benchmark
+	public List<User> findAll() {
+		return reads.execute(status -> userRepository.findAll());
+	}
+}
@@ -0,0 +1,79 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import com.jipasoft.service.AccountService;
+import com.jipasoft.util.Profiles;
+
+/**
+ * {@code UserDetailsServiceImpl.loadUserByUsername} on the {@code h2} profile
+ * with the users cache and without it ({@code spring.cache.type=none})
+ * 
+ * @author Julius Krah
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserDetailsBenchmark {
+	private static final int USERS = 1000;
+
+	@Param({ "caffeine", "none" })
+	public String cache;
+
+	private ConfigurableApplicationContext context;
+	private UserDetailsService userDetailsService;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = Contexts.start(Profiles.H2, "spring.cache.type=" + cache);
+		context.getBean(AccountService.class).saveAll(Contexts.users(USERS));
+		userDetailsService = context.getBean(UserDetailsService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public UserDetails loadUserByUsername() {
+		return userDetailsService.loadUserByUsername("bench" + ThreadLocalRandom.current().nextInt(USERS));
+	}
+}
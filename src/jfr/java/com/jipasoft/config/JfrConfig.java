@@ -0,0 +1,48 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.jipasoft.task.JfrAspect;
+
+/**
+ * Java Flight Recorder events of the application, see {@link JfrAspect}.
+ * <p>
+ * The application still builds on Java 8, so this configuration lives in the
+ * {@code src/jfr} source set: the {@code jfr} Maven profile, active on JDK
+ * 11+, compiles it and registers it as an auto-configuration. At runtime it
+ * requires the {@code jdk.jfr} API and can be switched off with
+ * {@code jfr.events.enabled=false}
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+@ConditionalOnClass(name = "jdk.jfr.Event")
+@ConditionalOnProperty(name = "jfr.events.enabled", matchIfMissing = true)
+public class JfrConfig {
+
+	@Bean
+	public JfrAspect jfrAspect(Environment env) {
+		return new JfrAspect(String.join(",", env.getActiveProfiles()));
+	}
+}
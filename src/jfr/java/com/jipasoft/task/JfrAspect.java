@@ -0,0 +1,176 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.bind.annotation.PathVariable;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserDTO;
+import com.jipasoft.task.jfr.CallEvent;
+import com.jipasoft.task.jfr.ControllerEvent;
+import com.jipasoft.task.jfr.PasswordEncoderEvent;
+import com.jipasoft.task.jfr.RepositoryEvent;
+import com.jipasoft.task.jfr.ServiceEvent;
+import com.jipasoft.task.jfr.UserDetailsEvent;
+
+import jdk.jfr.EventType;
+
+/**
+ * Emits the {@link CallEvent JFR events} of the application around the
+ * controllers, the {@code AccountService} facade, the repositories, the
+ * {@code UserDetailsService} and the {@code PasswordEncoder}.
+ * <p>
+ * The events are switched on and off with the settings of the JFR recordings,
+ * e.g. {@code jcmd <pid> JFR.start settings=profile}. While no recording
+ * enables an event type, the advice only checks
+ * {@link EventType#isEnabled()} and proceeds. Passwords, reset keys and
+ * activation keys are never recorded.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Aspect
+// inside the metrics and server timing aspects
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class JfrAspect {
+	private static final EventType CONTROLLER = EventType.getEventType(ControllerEvent.class);
+	private static final EventType SERVICE = EventType.getEventType(ServiceEvent.class);
+	private static final EventType REPOSITORY = EventType.getEventType(RepositoryEvent.class);
+	private static final EventType USER_DETAILS = EventType.getEventType(UserDetailsEvent.class);
+	private static final EventType PASSWORD_ENCODER = EventType.getEventType(PasswordEncoderEvent.class);
+	// findAccountByResetKey, findOneByResetKey, ...
+	private static final Pattern SECRET_KEY = Pattern.compile("(?i)(reset|activation)Key");
+
+	private final String profile;
+
+	public JfrAspect(String profile) {
+		this.profile = profile;
+	}
+
+	@Around("execution(public * com.jipasoft.web..*Controller.*(..))")
+	public Object controller(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!CONTROLLER.isEnabled())
+			return joinPoint.proceed();
+		return record(ControllerEvent::new, joinPoint, controllerKey(joinPoint));
+	}
+
+	@Around("execution(public * com.jipasoft.service.AccountService+.*(..))")
+	public Object service(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!SERVICE.isEnabled())
+			return joinPoint.proceed();
+		return record(ServiceEvent::new, joinPoint, key(joinPoint));
+	}
+
+	@Around("execution(public * com.jipasoft.repository.BaseRepository+.*(..))")
+	public Object repository(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!REPOSITORY.isEnabled())
+			return joinPoint.proceed();
+		return record(RepositoryEvent::new, joinPoint, key(joinPoint));
+	}
+
+	@Around("execution(* org.springframework.security.core.userdetails.UserDetailsService+.loadUserByUsername(..))")
+	public Object userDetails(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!USER_DETAILS.isEnabled())
+			return joinPoint.proceed();
+		return record(UserDetailsEvent::new, joinPoint, key(joinPoint));
+	}
+
+	@Around("execution(* org.springframework.security.crypto.password.PasswordEncoder+.*(..))")
+	public Object passwordEncoder(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!PASSWORD_ENCODER.isEnabled())
+			return joinPoint.proceed();
+		return record(PasswordEncoderEvent::new, joinPoint, null);
+	}
+
+	private Object record(Supplier<CallEvent> events, ProceedingJoinPoint joinPoint, String key) throws Throwable {
+		CallEvent event = events.get();
+		event.begin();
+		String outcome = "success";
+		Object result = null;
+		try {
+			result = joinPoint.proceed();
+			return result;
+		} catch (Throwable e) {
+			outcome = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.operation = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+				event.key = key;
+				event.profile = profile;
+				event.rows = rows(result);
+				event.outcome = outcome;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * The first argument when it identifies an account, never a reset or
+	 * activation key: they are as good as a password until used
+	 */
+	private static String key(ProceedingJoinPoint joinPoint) {
+		Object[] args = joinPoint.getArgs();
+		if (args.length == 0 || SECRET_KEY.matcher(joinPoint.getSignature().getName()).find())
+			return null;
+		Object arg = args[0];
+		if (arg instanceof String)
+			return (String) arg;
+		if (arg instanceof User)
+			return ((User) arg).getLogin();
+		if (arg instanceof Collection)
+			return "size=" + ((Collection<?>) arg).size();
+		return null;
+	}
+
+	/**
+	 * The login of a bound {@link UserDTO} or the first path variable
+	 */
+	private static String controllerKey(ProceedingJoinPoint joinPoint) {
+		Object[] args = joinPoint.getArgs();
+		Annotation[][] annotations = ((MethodSignature) joinPoint.getSignature()).getMethod().getParameterAnnotations();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] instanceof UserDTO)
+				return ((UserDTO) args[i]).getLogin();
+			for (Annotation annotation : annotations[i])
+				if (annotation instanceof PathVariable && args[i] != null)
+					return args[i].toString();
+		}
+		return null;
+	}
+
+	private static int rows(Object result) {
+		if (result instanceof Optional)
+			return ((Optional<?>) result).isPresent() ? 1 : 0;
+		if (result instanceof Collection)
+			return ((Collection<?>) result).size();
+		return -1;
+	}
+}
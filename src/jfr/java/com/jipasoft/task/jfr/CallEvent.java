@@ -0,0 +1,53 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the application events emitted around calls. The duration of the
+ * event is the duration of the call
+ * 
+ * @author Julius Krah
+ *
+ */
+@Category("Spring Profiles")
+@StackTrace(false)
+public abstract class CallEvent extends Event {
+	@Label("Operation")
+	@Description("Class and method called")
+	public String operation;
+
+	@Label("Key")
+	@Description("Login, id or size of the first argument")
+	public String key;
+
+	@Label("Profile")
+	@Description("Active datastore profiles")
+	public String profile;
+
+	@Label("Rows")
+	@Description("Number of results, -1 when the result is not counted")
+	public int rows;
+
+	@Label("Outcome")
+	@Description("success or the simple name of the exception")
+	public String outcome;
+}
@@ -20,6 +20,7 @@ import java.util.Locale;
 import javax.inject.Inject;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -29,13 +30,15 @@ import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
 import org.springframework.boot.autoconfigure.mail.MailProperties;
 import org.springframework.boot.autoconfigure.mongo.MongoProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
 import org.springframework.core.env.Environment;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -45,6 +48,7 @@ import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 
 import com.github.mongobee.Mongobee;
+import com.jipasoft.config.security.UpgradingPasswordEncoder;
 import com.jipasoft.domain.AbstractAuditEntity;
 import com.jipasoft.service.Services;
 import com.jipasoft.util.Profiles;
@@ -70,12 +74,14 @@ import lombok.extern.slf4j.Slf4j;
  * <li>{@link PostgresConfig PostgreSQL Database}</li>
  * <li>{@link MySQLConfig MySQL Database}</li>
  * <li>{@link MongoConfig MongoDB}</li>
+ * <li>{@link MemoryConfig In-memory maps}</li>
  * </ol>
  * </p>
  * 
  * @see H2Config
  * @see PostgresConfig
  * @see MongoConfig
+ * @see MemoryConfig
  * 
  * @author Julius Krah
  *
@@ -84,8 +90,10 @@ import lombok.extern.slf4j.Slf4j;
 @SpringBootApplication(scanBasePackageClasses = { Controllers.class, Services.class })
 @EnableConfigurationProperties({ LiquibaseProperties.class, MailProperties.class })
 @EnableAspectJAutoProxy
+// evict cache entries only after the surrounding transaction has committed
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
 @EntityScan(basePackageClasses = AbstractAuditEntity.class)
-@Import(value = { H2Config.class, PostgresConfig.class, MongoConfig.class, AspectConfig.class, SecurityConfig.class })
+@Import(value = { H2Config.class, PostgresConfig.class, MongoConfig.class, MemoryConfig.class, ReplicaDataSourceConfig.class, DatasetConfig.class, MetricsConfig.class, ServerTimingConfig.class, RememberMeConfig.class, AspectConfig.class, SecurityConfig.class })
 public class Application implements WebMvcConfigurer {
 	@Inject
 	private LiquibaseProperties liquibaseProperties;
@@ -108,14 +116,38 @@ public class Application implements WebMvcConfigurer {
 	}
 
 	/**
-	 * {@link PasswordEncoder} bean.
+	 * {@link PasswordEncoder} bean. The BCrypt strength is
+	 * {@code hashing.strength} when set, otherwise the highest strength
+	 * between {@code hashing.min-strength} and {@code hashing.max-strength}
+	 * whose hash takes at most {@code hashing.target-millis} on this machine
 	 * 
-	 * @return <b>{@code BCryptPasswordEncoder}</b> with strength (passed as
-	 *         argument) the log rounds to use, between 4 and 31
+	 * @return <b>{@code UpgradingPasswordEncoder}</b> with the log rounds to
+	 *         use, between 4 and 31
 	 */
 	@Bean
-	public PasswordEncoder encoder() {
-		return new BCryptPasswordEncoder(10);
+	public UpgradingPasswordEncoder encoder(@Value("${hashing.strength:0}") int strength, @Value("${hashing.target-millis:250}") long targetMillis,
+			@Value("${hashing.min-strength:10}") int minStrength, @Value("${hashing.max-strength:14}") int maxStrength) {
+		if (strength > 0)
+			return new UpgradingPasswordEncoder(strength);
+		return UpgradingPasswordEncoder.calibrate(targetMillis, minStrength, maxStrength);
+	}
+
+	/**
+	 * Pool hashing and validating the rows of an account import, one thread per
+	 * available processor since bcrypt is CPU bound
+	 * 
+	 * @return {@code ThreadPoolTaskExecutor}
+	 * @see com.jipasoft.service.Impl.AccountImportServiceImpl
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor importHashExecutor() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(processors);
+		executor.setMaxPoolSize(processors);
+		executor.setThreadNamePrefix("import-hash-");
+
+		return executor;
 	}
 
 	/**
@@ -170,8 +202,8 @@ public class Application implements WebMvcConfigurer {
 		liquibase.setContexts(liquibaseProperties.getContexts());
 		liquibase.setDefaultSchema(liquibaseProperties.getDefaultSchema());
 		liquibase.setDropFirst(liquibaseProperties.isDropFirst());
-		// When the mongo profile is active, the migration is not required
-		if (env.acceptsProfiles(Profiles.MONGO))
+		// When the mongo or memory profile is active, the migration is not required
+		if (env.acceptsProfiles(Profiles.MONGO, Profiles.MEMORY))
 			liquibase.setShouldRun(false);
 		else {
 			liquibase.setShouldRun(liquibaseProperties.isEnabled());
@@ -0,0 +1,78 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jipasoft.service.AccountService;
+import com.jipasoft.task.DatasetLoader;
+import com.jipasoft.util.Profiles;
+import com.jipasoft.util.UserGenerator;
+
+/**
+ * Loads {@code dataset.users} generated users on startup, for load tests and
+ * benchmarks at scale
+ * 
+ * @author Julius Krah
+ *
+ * @see UserGenerator
+ */
+@Configuration
+@ConditionalOnProperty("dataset.users")
+public class DatasetConfig {
+	@Inject
+	private Environment env;
+	@Inject
+	private Provider<JdbcTemplate> jdbcTemplate;
+
+	@Bean
+	public DatasetLoader datasetLoader(AccountService accountService, PasswordEncoder encoder, PlatformTransactionManager transactionManager,
+			ThreadPoolTaskExecutor datasetExecutor, @Value("${dataset.users}") long users, @Value("${dataset.seed:42}") long seed,
+			@Value("${dataset.batch-size:5000}") int batchSize) {
+		UserGenerator generator = new UserGenerator(seed, encoder, 16);
+		// the SQL profiles get plain JDBC batches
+		JdbcTemplate jdbc = env.acceptsProfiles(Profiles.MONGO, Profiles.MEMORY) ? null : jdbcTemplate.get();
+		return new DatasetLoader(generator, accountService, jdbc, new TransactionTemplate(transactionManager), datasetExecutor,
+				users, batchSize);
+	}
+
+	/**
+	 * Generates and writes the ranges of the dataset, {@code dataset.threads}
+	 * at a time or one per processor
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor datasetExecutor(@Value("${dataset.threads:0}") int threads) {
+		int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(size);
+		executor.setMaxPoolSize(size);
+		executor.setThreadNamePrefix("dataset-");
+
+		return executor;
+	}
+}
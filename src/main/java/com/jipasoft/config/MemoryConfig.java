@@ -0,0 +1,39 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.jipasoft.repository.memory.BaseRepositoryImpl;
+import com.jipasoft.util.Profiles;
+
+/**
+ * Configuration specific for {@code memory} profile. The users are held in
+ * concurrent maps inside the application, optionally snapshotted to disk. It
+ * is meant for load tests and edge nodes, and as the baseline when comparing
+ * the overhead of the other datastores
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+@Profile(Profiles.MEMORY)
+@ComponentScan(basePackageClasses = BaseRepositoryImpl.class)
+public class MemoryConfig {
+
+}
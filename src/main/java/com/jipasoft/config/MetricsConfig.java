@@ -0,0 +1,77 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.jipasoft.task.MetricsAspect;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * Application metrics, exported by the actuator {@code metrics} endpoint
+ * alongside the Hikari pool metrics that Spring Boot binds on its own:
+ * <ul>
+ * <li>timers of the repositories and of the service facade, see
+ * {@link MetricsAspect}</li>
+ * <li>active, queued and completed tasks and rejections of every
+ * {@link ThreadPoolTaskExecutor} bean</li>
+ * </ul>
+ * The MongoDB connection pool metrics are registered by {@link MongoConfig}
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+public class MetricsConfig {
+
+	@Bean
+	public MetricsAspect metricsAspect(MeterRegistry registry, Environment env) {
+		return new MetricsAspect(registry, String.join(",", env.getActiveProfiles()));
+	}
+
+	/**
+	 * Binds the executors once they are initialized. Rejected tasks are counted
+	 * in {@code executor.rejected} before the original handler runs
+	 * 
+	 * @param beanFactory
+	 * @return MeterBinder
+	 */
+	@Bean
+	public MeterBinder taskExecutorMetrics(ListableBeanFactory beanFactory) {
+		return registry -> beanFactory.getBeansOfType(ThreadPoolTaskExecutor.class).forEach((name, executor) -> {
+			ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+			new ExecutorServiceMetrics(pool, name, Tags.empty()).bindTo(registry);
+			Counter rejected = registry.counter("executor.rejected", "name", name);
+			RejectedExecutionHandler handler = pool.getRejectedExecutionHandler();
+			pool.setRejectedExecutionHandler((task, rejecting) -> {
+				rejected.increment();
+				handler.rejectedExecution(task, rejecting);
+			});
+		});
+	}
+}
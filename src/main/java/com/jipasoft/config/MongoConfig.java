@@ -33,7 +33,11 @@ import com.jipasoft.domain.util.JSR310DateConverters.LocalDateTimeToDateConverte
 import com.jipasoft.domain.util.JSR310DateConverters.LocalDateToDateConverter;
 import com.jipasoft.domain.util.JSR310DateConverters.ZonedDateTimeToDateConverter;
 import com.jipasoft.repository.mongo.BaseRepositoryImpl;
+import com.jipasoft.task.MongoPoolMetrics;
 import com.jipasoft.util.Profiles;
+import com.mongodb.MongoClientOptions;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Configuration specific for {@code mongo} profile. This configuration uses
@@ -66,4 +70,16 @@ public class MongoConfig {
 		return new MongoCustomConversions(converters);
 	}
 
+	/**
+	 * Options of the auto-configured client. Reports the connection pools to
+	 * {@link MongoPoolMetrics}
+	 * 
+	 * @param registry
+	 * @return MongoClientOptions
+	 */
+	@Bean
+	public MongoClientOptions mongoClientOptions(MeterRegistry registry) {
+		return MongoClientOptions.builder().addConnectionPoolListener(new MongoPoolMetrics(registry)).build();
+	}
+
 }
@@ -0,0 +1,81 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.jipasoft.config.security.CachingTokenRepository;
+import com.jipasoft.config.security.JdbcTokenRepository;
+import com.jipasoft.config.security.MemoryTokenRepository;
+import com.jipasoft.config.security.MongoTokenRepository;
+import com.jipasoft.config.security.PurgeableTokenRepository;
+import com.jipasoft.task.RememberMeTokenPurge;
+import com.jipasoft.util.Profiles;
+
+/**
+ * Stores of the persistent remember-me tokens, one per datastore profile. A
+ * returning user with a remember-me cookie is authenticated with a lookup of
+ * the series, served from the {@value CachingTokenRepository#TOKENS_CACHE}
+ * cache when possible, instead of a password hash. Expired series are purged
+ * on a schedule
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+@EnableScheduling
+public class RememberMeConfig {
+	@Value("${remember-me.token-validity-seconds:1209600}")
+	private int tokenValiditySeconds;
+	@Value("${remember-me.cache-seconds:30}")
+	private long cacheSeconds;
+
+	@Bean
+	@Profile({ Profiles.H2, Profiles.POSTGRES, Profiles.MYSQL, Profiles.HEROKU })
+	public PurgeableTokenRepository jdbcTokenRepository(DataSource dataSource) {
+		return new JdbcTokenRepository(dataSource);
+	}
+
+	@Bean
+	@Profile(Profiles.MONGO)
+	public PurgeableTokenRepository mongoTokenRepository(MongoOperations mongoOperations) {
+		return new MongoTokenRepository(mongoOperations);
+	}
+
+	@Bean
+	@Profile(Profiles.MEMORY)
+	public PurgeableTokenRepository memoryTokenRepository() {
+		return new MemoryTokenRepository();
+	}
+
+	@Bean
+	public CachingTokenRepository cachingTokenRepository(PurgeableTokenRepository tokenRepository, CacheManager cacheManager) {
+		return new CachingTokenRepository(tokenRepository, cacheManager.getCache(CachingTokenRepository.TOKENS_CACHE), cacheSeconds);
+	}
+
+	@Bean
+	public RememberMeTokenPurge rememberMeTokenPurge(PurgeableTokenRepository tokenRepository) {
+		return new RememberMeTokenPurge(tokenRepository, tokenValiditySeconds);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.jipasoft.config.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuration for the SQL profiles when a read replica is set with
+ * {@code spring.datasource.replica.hikari.jdbc-url}. The primary and the
+ * replica each get their own Hikari pool, named {@code primary} and
+ * {@code replica} in the {@code hikaricp.*} metrics, and the application
+ * {@code DataSource} routes between them with a
+ * {@link ReplicaRoutingDataSource}
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "spring.datasource.replica.hikari", name = "jdbc-url")
+public class ReplicaDataSourceConfig {
+	@Inject
+	private DataSourceProperties properties;
+	@Inject
+	private MeterRegistry registry;
+	@Value("${spring.datasource.replica.retry-interval:30000}")
+	private long retryInterval;
+
+	/**
+	 * The read-write pool, bound to {@code spring.datasource.hikari} like the
+	 * auto-configured one
+	 * 
+	 * @return HikariDataSource
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource() {
+		HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		dataSource.setPoolName("primary");
+		return dataSource;
+	}
+
+	/**
+	 * The read-only pool, bound to {@code spring.datasource.replica.hikari}.
+	 * It does not connect on startup so that the application starts while
+	 * the replica is down
+	 * 
+	 * @return HikariDataSource
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.replica.hikari")
+	public HikariDataSource replicaDataSource() {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setPoolName("replica");
+		dataSource.setReadOnly(true);
+		dataSource.setInitializationFailTimeout(-1);
+		return dataSource;
+	}
+
+	/**
+	 * The application {@code DataSource}. The physical connection is fetched
+	 * lazily so that the routing sees the attributes of the transaction
+	 * 
+	 * @return DataSource
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource() {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource(), replicaDataSource(), retryInterval, registry);
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+}
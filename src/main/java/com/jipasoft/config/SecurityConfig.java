@@ -15,10 +15,18 @@
 */
 package com.jipasoft.config;
 
+import java.util.Base64;
+import java.util.UUID;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -27,13 +35,34 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.keygen.KeyGenerators;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.access.intercept.FilterSecurityInterceptor;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+
+import com.jipasoft.config.security.ApiTokenAuthenticationFilter;
+import com.jipasoft.config.security.ApiTokenService;
+import com.jipasoft.config.security.CachingRememberMeServices;
+import com.jipasoft.config.security.CachingTokenRepository;
+import com.jipasoft.config.security.LoginThrottleFilter;
+import com.jipasoft.config.security.RateLimiter;
+import com.jipasoft.config.security.RehashingAuthenticationProvider;
+import com.jipasoft.config.security.UpgradingPasswordEncoder;
+import com.jipasoft.service.AccountService;
+import com.jipasoft.service.PasswordHashingService;
+import com.jipasoft.task.ServerTimingFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Enable spring security for this application that handles Authorization and
- * Authentication
+ * Authentication. Browsers sign in with the login form; machine clients use
+ * the API tokens of {@link ApiTokenSecurityConfig}
  * 
  * @author Julius Krah
  *
@@ -45,18 +74,38 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	@Inject
 	private Provider<UserDetailsService> userDetailsServiceProvider;
 	@Inject
-	private PasswordEncoder passwordEncoder;
+	private Provider<AccountService> accountServiceProvider;
+	@Inject
+	private Provider<PasswordHashingService> hashingProvider;
+	@Inject
+	private UpgradingPasswordEncoder passwordEncoder;
+	@Inject
+	private CachingTokenRepository tokenRepository;
+	@Inject
+	private MeterRegistry registry;
+	@Inject
+	private Environment env;
+	@Value("${server-timing.enabled:true}")
+	private boolean serverTiming;
+	@Value("${remember-me.token-validity-seconds:1209600}")
+	private int rememberMeValiditySeconds;
+	// only checked by this instance, a restart just invalidates the sessions
+	// authenticated by remember-me, not the cookies
+	private final String rememberMeKey = UUID.randomUUID().toString();
 
 	/**
-	 * Inject a global parent for Spring Authentication Manager.
+	 * Inject a global parent for Spring Authentication Manager. Password
+	 * hashes weaker than the current strength are upgraded on login
 	 * 
 	 * @param auth
 	 * @throws Exception
 	 * @see AuthenticationManager
+	 * @see RehashingAuthenticationProvider
 	 */
 	@Inject
 	public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-		auth.userDetailsService(userDetailsServiceProvider.get()).passwordEncoder(passwordEncoder);
+		auth.authenticationProvider(new RehashingAuthenticationProvider(userDetailsServiceProvider.get(), passwordEncoder,
+				hashingProvider.get(), accountServiceProvider));
 	}
 
 	/**
@@ -86,9 +135,116 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 		.and()
 			.formLogin()
 			.loginPage("/login").permitAll()
+		.and()
+			.rememberMe().key(rememberMeKey).rememberMeServices(rememberMeServices())
 		.and()
 			.logout().logoutRequestMatcher(new AntPathRequestMatcher("/logout")).permitAll();
 		// @formatter:on
+		if (env.getProperty("login-throttle.enabled", Boolean.class, true))
+			http.addFilterBefore(loginThrottleFilter().getFilter(), UsernamePasswordAuthenticationFilter.class);
+		if (serverTiming)
+			http.addFilterAfter(new ServerTimingFilter.SecurityEnd(), FilterSecurityInterceptor.class);
+	}
+
+	/**
+	 * Persistent remember-me: the cookie holds a series and a token that is
+	 * replaced on every use, so returning users are authenticated with a
+	 * token lookup instead of a password hash
+	 * 
+	 * @return the remember-me services of the form login
+	 * @see CachingTokenRepository
+	 */
+	private CachingRememberMeServices rememberMeServices() {
+		CachingRememberMeServices rememberMeServices = new CachingRememberMeServices(rememberMeKey, userDetailsServiceProvider.get(),
+				tokenRepository);
+		rememberMeServices.setTokenValiditySeconds(rememberMeValiditySeconds);
+		return rememberMeServices;
+	}
+
+	/**
+	 * Login attempts allowed per minute and in a burst, by client address and
+	 * by login. Each limiter takes 8 bytes per bucket. The form login and the
+	 * HTTP Basic login of {@link ApiTokenSecurityConfig} share the filter, it is
+	 * only added to the security filter chains, not to the servlet container
+	 * 
+	 * @return the filter throttling the form and API token logins
+	 * @see RateLimiter
+	 */
+	@Bean
+	public FilterRegistrationBean<LoginThrottleFilter> loginThrottleFilter() {
+		int buckets = env.getProperty("login-throttle.buckets", Integer.class, 65536);
+		//@formatter:off
+		FilterRegistrationBean<LoginThrottleFilter> registration = new FilterRegistrationBean<>(new LoginThrottleFilter(
+				new RateLimiter(env.getProperty("login-throttle.ip.per-minute", Integer.class, 30), env.getProperty("login-throttle.ip.burst", Integer.class, 10), buckets),
+				new RateLimiter(env.getProperty("login-throttle.login.per-minute", Integer.class, 5), env.getProperty("login-throttle.login.burst", Integer.class, 5), buckets),
+				registry));
+		//@formatter:on
+		registration.setEnabled(false);
+		return registration;
+	}
+
+	/**
+	 * Stateless filter chain of the machine clients, ahead of the form login
+	 * one. Clients exchange their credentials for a token once with
+	 * {@code POST /api/token} over HTTP Basic, then send it as
+	 * {@code Authorization: Bearer <token>}. The token is verified with an
+	 * HMAC, without the {@code UserDetailsService}, a password hash or a
+	 * session. Browsers never send the header on their own, so CSRF
+	 * protection is not needed here.
+	 * <p>
+	 * {@code api-token.secret} (base64, 32 bytes or more) has to be shared by
+	 * all the instances; without it, a random one is generated on startup.
+	 * </p>
+	 * 
+	 * @author Julius Krah
+	 *
+	 */
+	@Slf4j
+	@Configuration
+	@Order(1)
+	public static class ApiTokenSecurityConfig extends WebSecurityConfigurerAdapter {
+		@Value("${api-token.secret:}")
+		private String secret;
+		@Value("${api-token.validity-seconds:3600}")
+		private long validitySeconds;
+		@Value("${server-timing.enabled:true}")
+		private boolean serverTiming;
+		@Value("${login-throttle.enabled:true}")
+		private boolean loginThrottle;
+		@Inject
+		private FilterRegistrationBean<LoginThrottleFilter> loginThrottleFilter;
+
+		@Bean
+		public ApiTokenService apiTokenService() {
+			if (secret.isEmpty()) {
+				log.warn("No api-token.secret set, API tokens will not survive a restart");
+				return new ApiTokenService(KeyGenerators.secureRandom(32).generateKey(), validitySeconds);
+			}
+			return new ApiTokenService(Base64.getDecoder().decode(secret), validitySeconds);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void configure(HttpSecurity http) throws Exception {
+			//@formatter:off
+			http.requestMatcher(new OrRequestMatcher(ApiTokenAuthenticationFilter.BEARER_TOKEN, new AntPathRequestMatcher("/api/token", "POST")))
+				.authorizeRequests()
+				.anyRequest().authenticated()
+			.and()
+				.httpBasic()
+			.and()
+				.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+			.and()
+				.csrf().disable()
+				.addFilterBefore(new ApiTokenAuthenticationFilter(apiTokenService()), BasicAuthenticationFilter.class);
+			// @formatter:on
+			if (loginThrottle)
+				http.addFilterBefore(loginThrottleFilter.getFilter(), BasicAuthenticationFilter.class);
+			if (serverTiming)
+				http.addFilterAfter(new ServerTimingFilter.SecurityEnd(), FilterSecurityInterceptor.class);
+		}
 	}
 
 }
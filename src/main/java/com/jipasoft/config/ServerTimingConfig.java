@@ -0,0 +1,79 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+
+import com.jipasoft.task.ServerTiming;
+import com.jipasoft.task.ServerTimingAspect;
+import com.jipasoft.task.ServerTimingFilter;
+import com.jipasoft.task.ServerTimingInterceptor;
+
+/**
+ * Adds a {@code Server-Timing} header to every response, breaking the request
+ * down into the spans of {@link ServerTiming}. Turned off with
+ * {@code server-timing.enabled=false}.
+ * <p>
+ * Thymeleaf renders the whole page before writing it, so the header can still
+ * be set once the render span is known.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "server-timing.enabled", matchIfMissing = true)
+public class ServerTimingConfig implements WebMvcConfigurer {
+
+	@Bean
+	public FilterRegistrationBean<ServerTimingFilter> serverTimingFilter() {
+		FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(new ServerTimingFilter());
+		// right before the spring security filter chain
+		registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+		return registration;
+	}
+
+	@Bean
+	public ServerTimingAspect serverTimingAspect() {
+		return new ServerTimingAspect();
+	}
+
+	@Bean
+	public static BeanPostProcessor bufferedThymeleafOutput() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+				if (bean instanceof ThymeleafViewResolver)
+					((ThymeleafViewResolver) bean).setProducePartialOutputWhileProcessing(false);
+				return bean;
+			}
+		};
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new ServerTimingInterceptor());
+	}
+}
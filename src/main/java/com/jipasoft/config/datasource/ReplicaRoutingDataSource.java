@@ -0,0 +1,163 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routes {@code readOnly} transactions to a read replica and everything else
+ * to the primary database. The routing key is read when the physical
+ * connection is fetched, so this {@code DataSource} must be wrapped in a
+ * {@link LazyConnectionDataSourceProxy} for the transaction attributes to be
+ * known at that point.
+ * <p>
+ * Reads go to the primary instead when:
+ * <ul>
+ * <li>the current request already ran a read-write transaction, so it reads
+ * its own writes in spite of the replication lag</li>
+ * <li>the replica failed to hand out a connection during the last
+ * {@code retryInterval} milliseconds</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+	public enum Route {
+		PRIMARY, REPLICA
+	}
+
+	private static final String PINNED_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".PINNED";
+	private final DataSource primary;
+	private final DataSource replica;
+	private final long retryInterval;
+	private final Map<Route, Counter> routed = new EnumMap<>(Route.class);
+	private final Counter fallbacks;
+	private volatile boolean replicaDown;
+	private volatile long replicaDownUntil;
+
+	/**
+	 * @param primary
+	 *            the read-write database
+	 * @param replica
+	 *            the read replica
+	 * @param retryInterval
+	 *            how long, in milliseconds, to keep reads on the primary after
+	 *            the replica failed
+	 * @param registry
+	 *            registry of the routing and fallback counters
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long retryInterval, MeterRegistry registry) {
+		this.primary = primary;
+		this.replica = replica;
+		this.retryInterval = retryInterval;
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(Route.PRIMARY, primary);
+		targets.put(Route.REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		for (Route route : Route.values())
+			routed.put(route, registry.counter("datasource.routing", "route", route.name().toLowerCase()));
+		fallbacks = registry.counter("datasource.replica.fallbacks");
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		Route route = route();
+		routed.get(route).increment();
+		return route;
+	}
+
+	private Route route() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			if (TransactionSynchronizationManager.isActualTransactionActive())
+				pin();
+			return Route.PRIMARY;
+		}
+		if (isPinned() || isReplicaDown())
+			return Route.PRIMARY;
+		return Route.REPLICA;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		DataSource target = determineTargetDataSource();
+		if (target != replica)
+			return target.getConnection();
+		try {
+			return replica.getConnection();
+		} catch (SQLException | RuntimeException e) {
+			fallback(e);
+			return primary.getConnection();
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		DataSource target = determineTargetDataSource();
+		if (target != replica)
+			return target.getConnection(username, password);
+		try {
+			return replica.getConnection(username, password);
+		} catch (SQLException | RuntimeException e) {
+			fallback(e);
+			return primary.getConnection(username, password);
+		}
+	}
+
+	private void fallback(Exception e) {
+		log.warn("Read replica unavailable, routing reads to the primary for {}ms: {}", retryInterval, e.getMessage());
+		replicaDownUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryInterval);
+		replicaDown = true;
+		fallbacks.increment();
+	}
+
+	private boolean isReplicaDown() {
+		if (replicaDown && System.nanoTime() - replicaDownUntil >= 0)
+			replicaDown = false;
+		return replicaDown;
+	}
+
+	private static void pin() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes != null)
+			attributes.setAttribute(PINNED_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+	}
+
+	private static boolean isPinned() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		return attributes != null && attributes.getAttribute(PINNED_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null;
+	}
+}
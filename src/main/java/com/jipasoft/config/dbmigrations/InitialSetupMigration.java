@@ -148,4 +148,35 @@ public class InitialSetupMigration {
 		log.info("Acquired changelog on 'account'");
 		//@formatter:on
 	}
+
+	/**
+	 * Index the keys used by the password reset and activation lookups. Most
+	 * accounts have neither key, so the indexes are sparse
+	 * 
+	 * @param db
+	 */
+	@ChangeSet(order = "03", author = "julius", id = "03-addKeyIndexes")
+	public void addKeyIndexes(DB db) {
+		log.info("Creating key indexes on 'account'...");
+		DBCollection usersCollection = db.getCollection("account");
+		usersCollection.createIndex(new BasicDBObject("reset_key", 1), new BasicDBObject("name", "reset_key").append("sparse", true));
+		usersCollection.createIndex(new BasicDBObject("activation_key", 1),
+				new BasicDBObject("name", "activation_key").append("sparse", true));
+		log.info("Acquired changelog on 'account' indexes");
+	}
+
+	/**
+	 * Index the remember-me tokens by user, for logouts, and by last use, for
+	 * the purge of expired series. The series is the {@code _id}
+	 * 
+	 * @param db
+	 */
+	@ChangeSet(order = "04", author = "julius", id = "04-addPersistentLogins")
+	public void addPersistentLogins(DB db) {
+		log.info("Creating indexes on 'persistent_logins'...");
+		DBCollection tokensCollection = db.getCollection("persistent_logins");
+		tokensCollection.createIndex(new BasicDBObject("username", 1), "username");
+		tokensCollection.createIndex(new BasicDBObject("last_used", 1), "last_used");
+		log.info("Acquired changelog on 'persistent_logins'");
+	}
 }
@@ -0,0 +1,82 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Authenticates requests carrying an {@code Authorization: Bearer <token>}
+ * header with the {@link ApiTokenService}. An invalid token is answered with
+ * a {@code 401} right away
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class ApiTokenAuthenticationFilter extends OncePerRequestFilter {
+	private static final String BEARER = "Bearer ";
+	/**
+	 * Matches the requests authenticated by this filter
+	 */
+	public static final RequestMatcher BEARER_TOKEN = request -> token(request) != null;
+	private final ApiTokenService tokenService;
+
+	public ApiTokenAuthenticationFilter(ApiTokenService tokenService) {
+		this.tokenService = tokenService;
+	}
+
+	/**
+	 * @param request
+	 * @return String the bearer token of the request or {@code null}
+	 */
+	public static String token(HttpServletRequest request) {
+		String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length()))
+			return null;
+		return header.substring(BEARER.length()).trim();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String token = token(request);
+		if (token != null) {
+			try {
+				SecurityContextHolder.getContext().setAuthentication(tokenService.authenticate(token));
+			} catch (AuthenticationException e) {
+				log.debug("Rejected API token: {}", e.getMessage());
+				SecurityContextHolder.clearContext();
+				response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+				response.sendError(HttpServletResponse.SC_UNAUTHORIZED, e.getMessage());
+				return;
+			}
+		}
+		filterChain.doFilter(request, response);
+	}
+}
@@ -0,0 +1,177 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+/**
+ * Issues and verifies the stateless API tokens of machine clients. A token is
+ * {@code base64url(payload) + "." + base64url(HMAC-SHA256(payload))} and the
+ * payload carries the token id, the login, the expiry (epoch seconds) and the
+ * authorities, so verifying a token needs neither the datastore nor a password
+ * hash.
+ * <p>
+ * Revoked token ids are kept in memory until the tokens expire, so a
+ * revocation only applies to the instance that received it.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class ApiTokenService {
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final String SEPARATOR = "|";
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+	private final SecretKeySpec key;
+	private final long validitySeconds;
+	// Mac instances are not thread safe
+	private final ThreadLocal<Mac> macs;
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+	/**
+	 * @param secret
+	 *            the HMAC key, at least 32 bytes
+	 * @param validitySeconds
+	 *            the lifetime of the tokens issued
+	 */
+	public ApiTokenService(byte[] secret, long validitySeconds) {
+		this.key = new SecretKeySpec(secret, ALGORITHM);
+		this.validitySeconds = validitySeconds;
+		this.macs = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(key);
+				return mac;
+			} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	public long getValiditySeconds() {
+		return validitySeconds;
+	}
+
+	/**
+	 * @param login
+	 *            the login of the client
+	 * @param authorities
+	 *            the authorities granted to the token
+	 * @return String a signed token, valid for {@link #getValiditySeconds()}
+	 */
+	public String issue(String login, Collection<? extends GrantedAuthority> authorities) {
+		long expires = Instant.now().getEpochSecond() + validitySeconds;
+		//@formatter:off
+		String payload = String.join(SEPARATOR,
+				UUID.randomUUID().toString(),
+				login,
+				String.valueOf(expires),
+				String.join(",", AuthorityUtils.authorityListToSet(authorities)));
+		//@formatter:on
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes));
+	}
+
+	/**
+	 * @param token
+	 *            a token issued by this service
+	 * @return Authentication the authenticated client
+	 * @throws AuthenticationException
+	 *             when the token is malformed, forged, expired or revoked
+	 */
+	public Authentication authenticate(String token) throws AuthenticationException {
+		String[] claims = verify(token);
+		if (revoked.containsKey(claims[0]))
+			throw new BadCredentialsException("API token revoked");
+		List<GrantedAuthority> authorities = claims[3].isEmpty() ? Collections.emptyList()
+				: AuthorityUtils.commaSeparatedStringToAuthorityList(claims[3]);
+		return new PreAuthenticatedAuthenticationToken(claims[1], claims[0], authorities);
+	}
+
+	/**
+	 * Rejects {@code token} until it expires
+	 * 
+	 * @param token
+	 *            a token issued by this service
+	 * @throws AuthenticationException
+	 *             when the token is malformed, forged or expired
+	 */
+	public void revoke(String token) throws AuthenticationException {
+		String[] claims = verify(token);
+		revoked.put(claims[0], Long.parseLong(claims[2]));
+	}
+
+	@Scheduled(fixedDelay = 60_000)
+	public void removeExpiredRevocations() {
+		long now = Instant.now().getEpochSecond();
+		revoked.values().removeIf(expires -> expires < now);
+	}
+
+	/**
+	 * Checks the signature in constant time, then the expiry
+	 * 
+	 * @return the id, login, expiry and authorities of the token
+	 */
+	private String[] verify(String token) {
+		int dot = token.indexOf('.');
+		if (dot < 0)
+			throw new BadCredentialsException("Malformed API token");
+		byte[] payload;
+		byte[] signature;
+		try {
+			payload = DECODER.decode(token.substring(0, dot));
+			signature = DECODER.decode(token.substring(dot + 1));
+		} catch (IllegalArgumentException e) {
+			throw new BadCredentialsException("Malformed API token", e);
+		}
+		if (!MessageDigest.isEqual(sign(payload), signature))
+			throw new BadCredentialsException("Invalid API token signature");
+
+		// signed by us, so well formed
+		String[] claims = new String(payload, StandardCharsets.UTF_8).split("\\" + SEPARATOR, -1);
+		if (Long.parseLong(claims[2]) < Instant.now().getEpochSecond())
+			throw new CredentialsExpiredException("API token expired");
+		return claims;
+	}
+
+	private byte[] sign(byte[] payload) {
+		return macs.get().doFinal(payload);
+	}
+}
@@ -0,0 +1,47 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenBasedRememberMeServices;
+
+/**
+ * Persistent remember-me over a {@link CachingTokenRepository}. A cookie whose
+ * token does not match the cached one is checked against the datastore before
+ * it is treated as stolen, which removes every token of the user
+ * 
+ * @author Julius Krah
+ *
+ */
+public class CachingRememberMeServices extends PersistentTokenBasedRememberMeServices {
+	private final CachingTokenRepository tokenRepository;
+
+	public CachingRememberMeServices(String key, UserDetailsService userDetailsService, CachingTokenRepository tokenRepository) {
+		super(key, userDetailsService, tokenRepository);
+		this.tokenRepository = tokenRepository;
+	}
+
+	@Override
+	protected UserDetails processAutoLoginCookie(String[] cookieTokens, HttpServletRequest request, HttpServletResponse response) {
+		if (cookieTokens.length == 2)
+			tokenRepository.evictIfStale(cookieTokens[0], cookieTokens[1]);
+		return super.processAutoLoginCookie(cookieTokens, request, response);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.Cache;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
+
+/**
+ * Keeps the remember-me tokens read from the datastore in the
+ * {@value #TOKENS_CACHE} cache keyed by series. The tokens are written through
+ * to the datastore.
+ * <p>
+ * Removing the tokens of a user, on logout or when a token theft is detected,
+ * evicts the series of that user only. Other instances of the application
+ * learn about the removal when their cached series is older than
+ * {@code cacheSeconds} and is read again, so they may accept a removed series
+ * for that long
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class CachingTokenRepository implements PersistentTokenRepository {
+	public static final String TOKENS_CACHE = "persistent-logins";
+	private final PurgeableTokenRepository delegate;
+	private final Cache cache;
+	private final long cacheNanos;
+
+	/**
+	 * @param delegate
+	 *            the store of the tokens
+	 * @param cache
+	 *            the cache of the tokens by series
+	 * @param cacheSeconds
+	 *            how long a cached token is used before it is read again
+	 */
+	public CachingTokenRepository(PurgeableTokenRepository delegate, Cache cache, long cacheSeconds) {
+		this.delegate = delegate;
+		this.cache = cache;
+		this.cacheNanos = TimeUnit.SECONDS.toNanos(cacheSeconds);
+	}
+
+	@Override
+	public void createNewToken(PersistentRememberMeToken token) {
+		delegate.createNewToken(token);
+		cache.put(token.getSeries(), new CachedToken(token));
+	}
+
+	@Override
+	public void updateToken(String series, String tokenValue, Date lastUsed) {
+		delegate.updateToken(series, tokenValue, lastUsed);
+		CachedToken cached = cache.get(series, CachedToken.class);
+		if (cached != null)
+			cache.put(series, new CachedToken(new PersistentRememberMeToken(cached.token.getUsername(), series, tokenValue, lastUsed)));
+	}
+
+	@Override
+	public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+		CachedToken cached = cache.get(seriesId, CachedToken.class);
+		if (cached != null && System.nanoTime() - cached.cachedAt < cacheNanos)
+			return cached.token;
+		PersistentRememberMeToken token = delegate.getTokenForSeries(seriesId);
+		if (token == null)
+			cache.evict(seriesId);
+		else
+			cache.put(seriesId, new CachedToken(token));
+		return token;
+	}
+
+	@Override
+	public void removeUserTokens(String username) {
+		// the series are read first, the delete does not return them
+		Iterable<String> series = delegate.findSeriesByUsername(username);
+		delegate.removeUserTokens(username);
+		series.forEach(cache::evict);
+	}
+
+	/**
+	 * Drops the cached token of {@code series} unless its value is
+	 * {@code tokenValue}. The cached token is stale when the series was used
+	 * through another instance of the application
+	 * 
+	 * @param series
+	 *            the series of the remember-me cookie
+	 * @param tokenValue
+	 *            the token of the remember-me cookie
+	 */
+	public void evictIfStale(String series, String tokenValue) {
+		CachedToken cached = cache.get(series, CachedToken.class);
+		if (cached != null && !cached.token.getTokenValue().equals(tokenValue))
+			cache.evict(series);
+	}
+
+	private static final class CachedToken {
+		private final PersistentRememberMeToken token;
+		private final long cachedAt = System.nanoTime();
+
+		CachedToken(PersistentRememberMeToken token) {
+			this.token = token;
+		}
+	}
+}
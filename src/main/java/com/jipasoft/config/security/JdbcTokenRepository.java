@@ -0,0 +1,56 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.security.web.authentication.rememberme.JdbcTokenRepositoryImpl;
+
+/**
+ * Remember-me tokens in the {@code persistent_logins} table, created by the
+ * Liquibase changelog. The series is the primary key, so resolving a cookie is
+ * one indexed lookup
+ * 
+ * @author Julius Krah
+ *
+ */
+public class JdbcTokenRepository extends JdbcTokenRepositoryImpl implements PurgeableTokenRepository {
+	private static final String REMOVE_EXPIRED_TOKENS_SQL = "delete from persistent_logins where last_used < ?";
+	private static final String SERIES_BY_USERNAME_SQL = "select series from persistent_logins where username = ?";
+
+	public JdbcTokenRepository(DataSource dataSource) {
+		setDataSource(dataSource);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long removeTokensLastUsedBefore(Date lastUsed) {
+		return getJdbcTemplate().update(REMOVE_EXPIRED_TOKENS_SQL, lastUsed);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> findSeriesByUsername(String username) {
+		return getJdbcTemplate().queryForList(SERIES_BY_USERNAME_SQL, String.class, username);
+	}
+}
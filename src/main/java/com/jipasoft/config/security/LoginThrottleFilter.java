@@ -0,0 +1,124 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Throttles the login attempts by client address and by lower case login,
+ * ahead of the {@code UserDetailsService} lookup and the password hash: the
+ * form login and the HTTP Basic login of {@code POST /api/token}. Throttled attempts are answered with a {@code 429} and a
+ * {@code Retry-After} header, and counted in {@code login.throttled} tagged
+ * with the limit they hit ({@code ip} or {@code login}).
+ * <p>
+ * The client address is {@code getRemoteAddr()}; behind a proxy such as the
+ * Heroku router, {@code server.use-forward-headers} has to be set.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class LoginThrottleFilter extends OncePerRequestFilter {
+	//@formatter:off
+	private static final RequestMatcher LOGIN_REQUEST = new OrRequestMatcher(
+			new AntPathRequestMatcher("/login", "POST"),
+			new AntPathRequestMatcher("/api/token", "POST"));
+	//@formatter:on
+	private final RateLimiter byAddress;
+	private final RateLimiter byLogin;
+	private final Counter addressThrottled;
+	private final Counter loginThrottled;
+
+	public LoginThrottleFilter(RateLimiter byAddress, RateLimiter byLogin, MeterRegistry registry) {
+		this.byAddress = byAddress;
+		this.byLogin = byLogin;
+		this.addressThrottled = registry.counter("login.throttled", "by", "ip");
+		this.loginThrottled = registry.counter("login.throttled", "by", "login");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		return !LOGIN_REQUEST.matches(request);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String address = request.getRemoteAddr();
+		long wait = byAddress.tryAcquire(address);
+		if (wait > 0) {
+			log.debug("Throttled login attempt from {}", address);
+			throttle(response, wait, addressThrottled);
+			return;
+		}
+		String login = login(request);
+		if (login != null) {
+			wait = byLogin.tryAcquire(login.trim().toLowerCase(Locale.ROOT));
+			if (wait > 0) {
+				log.debug("Throttled login attempt for {} from {}", login, address);
+				throttle(response, wait, loginThrottled);
+				return;
+			}
+		}
+		filterChain.doFilter(request, response);
+	}
+
+	/**
+	 * @return the login of the form or of the HTTP Basic credentials,
+	 *         {@code null} if there is none
+	 */
+	static String login(HttpServletRequest request) {
+		String login = request.getParameter("username");
+		String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (login != null || header == null || !header.regionMatches(true, 0, "Basic ", 0, 6))
+			return login;
+		try {
+			String credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+			int colon = credentials.indexOf(':');
+			return colon < 0 ? null : credentials.substring(0, colon);
+		} catch (IllegalArgumentException e) {
+			// not base64, BasicAuthenticationFilter rejects it
+			return null;
+		}
+	}
+
+	private void throttle(HttpServletResponse response, long waitNanos, Counter throttled) throws IOException {
+		throttled.increment();
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+		response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many login attempts");
+	}
+}
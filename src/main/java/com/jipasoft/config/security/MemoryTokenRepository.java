@@ -0,0 +1,78 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+
+/**
+ * Remember-me tokens of the {@code memory} profile. They do not survive a
+ * restart
+ * 
+ * @author Julius Krah
+ *
+ */
+public class MemoryTokenRepository implements PurgeableTokenRepository {
+	private final Map<String, PersistentRememberMeToken> tokens = new ConcurrentHashMap<>();
+
+	@Override
+	public void createNewToken(PersistentRememberMeToken token) {
+		if (tokens.putIfAbsent(token.getSeries(), token) != null)
+			throw new DataIntegrityViolationException("Series Id '" + token.getSeries() + "' already exists!");
+	}
+
+	@Override
+	public void updateToken(String series, String tokenValue, Date lastUsed) {
+		tokens.computeIfPresent(series, (id, token) -> new PersistentRememberMeToken(token.getUsername(), series, tokenValue, lastUsed));
+	}
+
+	@Override
+	public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+		return tokens.get(seriesId);
+	}
+
+	@Override
+	public void removeUserTokens(String username) {
+		tokens.values().removeIf(token -> token.getUsername().equals(username));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long removeTokensLastUsedBefore(Date lastUsed) {
+		long removed = 0;
+		for (PersistentRememberMeToken token : tokens.values())
+			if (token.getDate().before(lastUsed) && tokens.remove(token.getSeries(), token))
+				removed++;
+		return removed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> findSeriesByUsername(String username) {
+		return tokens.values().stream().filter(token -> token.getUsername().equals(username)).map(PersistentRememberMeToken::getSeries)
+				.collect(Collectors.toList());
+	}
+}
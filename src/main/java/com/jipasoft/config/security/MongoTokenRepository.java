@@ -0,0 +1,94 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+
+/**
+ * Remember-me tokens in the {@value #COLLECTION} collection, keyed by series.
+ * The {@code username} and {@code last_used} indexes are created by the
+ * Mongobee changelog
+ * 
+ * @author Julius Krah
+ *
+ */
+public class MongoTokenRepository implements PurgeableTokenRepository {
+	public static final String COLLECTION = "persistent_logins";
+	private final MongoOperations mongoOperations;
+
+	public MongoTokenRepository(MongoOperations mongoOperations) {
+		this.mongoOperations = mongoOperations;
+	}
+
+	@Override
+	public void createNewToken(PersistentRememberMeToken token) {
+		//@formatter:off
+		mongoOperations.insert(new Document("_id", token.getSeries())
+				.append("username", token.getUsername())
+				.append("token", token.getTokenValue())
+				.append("last_used", token.getDate()), COLLECTION);
+		//@formatter:on
+	}
+
+	@Override
+	public void updateToken(String series, String tokenValue, Date lastUsed) {
+		mongoOperations.updateFirst(query(where("_id").is(series)), Update.update("token", tokenValue).set("last_used", lastUsed),
+				COLLECTION);
+	}
+
+	@Override
+	public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+		Document token = mongoOperations.findOne(query(where("_id").is(seriesId)), Document.class, COLLECTION);
+		if (token == null)
+			return null;
+		return new PersistentRememberMeToken(token.getString("username"), seriesId, token.getString("token"), token.getDate("last_used"));
+	}
+
+	@Override
+	public void removeUserTokens(String username) {
+		mongoOperations.remove(query(where("username").is(username)), COLLECTION);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long removeTokensLastUsedBefore(Date lastUsed) {
+		return mongoOperations.remove(query(where("last_used").lt(lastUsed)), COLLECTION).getDeletedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> findSeriesByUsername(String username) {
+		Query query = query(where("username").is(username));
+		query.fields().include("_id");
+		return mongoOperations.find(query, Document.class, COLLECTION).stream().map(token -> token.getString("_id"))
+				.collect(Collectors.toList());
+	}
+}
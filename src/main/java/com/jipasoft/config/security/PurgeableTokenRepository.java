@@ -0,0 +1,46 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
+
+/**
+ * Store of the remember-me tokens that can drop the expired ones and list the
+ * series of a user
+ * 
+ * @author Julius Krah
+ *
+ */
+public interface PurgeableTokenRepository extends PersistentTokenRepository {
+	/**
+	 * Removes the series that have not been used since {@code lastUsed}
+	 * 
+	 * @param lastUsed
+	 *            the oldest use of a series to keep
+	 * @return long the number of series removed
+	 */
+	public long removeTokensLastUsedBefore(Date lastUsed);
+
+	/**
+	 * @param username
+	 *            the login of the user
+	 * @return List&lt;String&gt; the series of the user's tokens
+	 */
+	public List<String> findSeriesByUsername(String username);
+}
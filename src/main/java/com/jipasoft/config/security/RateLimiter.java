@@ -0,0 +1,135 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free rate limiter with a fixed memory footprint, whatever the number of
+ * keys. It applies the generic cell rate algorithm: each bucket holds the
+ * theoretical arrival time (TAT) of the next permit, and a request is let
+ * through while the TAT is at most {@code burst - 1} emission intervals ahead
+ * of now.
+ * <p>
+ * Keys are not stored: each key maps to two of the buckets, count-min sketch
+ * style, and is limited by the least loaded of the two. Keys colliding on both
+ * buckets share their limit, so the counting is approximate but never lets a
+ * single key through faster than its limit. Idle buckets need no eviction,
+ * their TAT simply falls behind the clock. Concurrent requests of one key may
+ * both be admitted on the same TAT; the limiter errs on letting through.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class RateLimiter {
+	private final AtomicLongArray buckets;
+	private final int mask;
+	private final long emissionInterval;
+	private final long burstTolerance;
+	private final LongSupplier clock;
+
+	/**
+	 * @param permitsPerMinute
+	 *            the sustained rate allowed to a key
+	 * @param burst
+	 *            the number of permits a key may take at once
+	 * @param buckets
+	 *            the number of buckets, rounded up to a power of two
+	 */
+	public RateLimiter(int permitsPerMinute, int burst, int buckets) {
+		this(permitsPerMinute, burst, buckets, nanoClock());
+	}
+
+	RateLimiter(int permitsPerMinute, int burst, int buckets, LongSupplier clock) {
+		int size = Integer.highestOneBit(Math.max(2, buckets - 1)) << 1;
+		this.buckets = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.emissionInterval = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+		this.burstTolerance = (Math.max(1, burst) - 1) * emissionInterval;
+		this.clock = clock;
+	}
+
+	/**
+	 * Nanoseconds since the limiter was created, so an empty bucket (0) is
+	 * always in the past
+	 */
+	private static LongSupplier nanoClock() {
+		long origin = System.nanoTime() - 1;
+		return () -> System.nanoTime() - origin;
+	}
+
+	/**
+	 * Takes a permit for {@code key}
+	 * 
+	 * @param key
+	 *            the key to limit
+	 * @return long {@code 0} when the permit was granted, otherwise the
+	 *         nanoseconds to wait for the next one
+	 */
+	public long tryAcquire(String key) {
+		// two unrelated hashes, keys sharing a hashCode still differ on the second bucket
+		int first = spread(key.hashCode() * 0x9E3779B9) & mask;
+		int second = (int) mix(fnv(key)) & mask;
+		long now = clock.getAsLong();
+		long tat = Math.max(now, Math.min(buckets.get(first), buckets.get(second)));
+		long wait = tat - now - burstTolerance;
+		if (wait > 0)
+			return wait;
+		long next = tat + emissionInterval;
+		raise(first, next);
+		raise(second, next);
+		return 0;
+	}
+
+	private void raise(int bucket, long tat) {
+		long current;
+		do {
+			current = buckets.get(bucket);
+		} while (current < tat && !buckets.compareAndSet(bucket, current, tat));
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * 64-bit FNV-1a of the UTF-8 bytes of {@code key}
+	 */
+	private static long fnv(String key) {
+		long hash = 0xCBF29CE484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3, spreads the bits of the FNV hash
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB93FE1A85A53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import javax.inject.Provider;
+
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import com.jipasoft.exception.HashingRejectedException;
+import com.jipasoft.service.AccountService;
+import com.jipasoft.service.PasswordHashingService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Form login provider that upgrades weak password hashes. Once a password
+ * matched a hash weaker than the current strength of the
+ * {@link UpgradingPasswordEncoder}, the password is rehashed on the
+ * {@link PasswordHashingService} pool and saved through
+ * {@link AccountService#save}, which also evicts the account from the
+ * {@code UserDetailsService} cache. The login itself never waits for the
+ * rehash; a rehash that could not be queued is retried on the next login
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+	private final UpgradingPasswordEncoder encoder;
+	private final PasswordHashingService hashing;
+	private final Provider<AccountService> accountServiceProvider;
+
+	public RehashingAuthenticationProvider(UserDetailsService userDetailsService, UpgradingPasswordEncoder encoder,
+			PasswordHashingService hashing, Provider<AccountService> accountServiceProvider) {
+		this.encoder = encoder;
+		this.hashing = hashing;
+		this.accountServiceProvider = accountServiceProvider;
+		setUserDetailsService(userDetailsService);
+		setPasswordEncoder(encoder);
+	}
+
+	@Override
+	protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+		if (authentication.getCredentials() != null && encoder.upgradeEncoding(user.getPassword()))
+			rehash(user.getUsername(), authentication.getCredentials().toString(), user.getPassword());
+		return super.createSuccessAuthentication(principal, authentication, user);
+	}
+
+	private void rehash(String login, String rawPassword, String weakHash) {
+		try {
+			hashing.hashAsync(rawPassword).thenAccept(hash -> {
+				AccountService accountService = accountServiceProvider.get();
+				accountService.findAccountByLogin(login)
+						// the password may have been changed in the meantime
+						.filter(account -> weakHash.equals(account.getPassword())).ifPresent(account -> {
+							account.setPassword(hash);
+							accountService.save(account);
+							log.debug("Upgraded the password hash of {} to strength {}", login, encoder.getStrength());
+						});
+			}).exceptionally(e -> {
+				log.warn("Could not upgrade the password hash of {}: {}", login, e.getMessage());
+				return null;
+			});
+		} catch (HashingRejectedException e) {
+			log.debug("Hashing pool busy, the password hash of {} will be upgraded on the next login", login);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BCrypt encoder whose strength is picked for the hardware it runs on. The
+ * strength of a hash is part of the hash itself ({@code $2a$10$...}), so
+ * hashes of any strength keep matching and the ones weaker than the current
+ * strength are reported by {@link #upgradeEncoding(String)} to be rehashed on
+ * the next successful login.
+ * <p>
+ * The hashes are stored as is rather than prefixed with an encoder id as the
+ * {@code DelegatingPasswordEncoder} does: the {@code password_hash} columns
+ * hold exactly 60 characters and BCrypt is the only algorithm in use.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class UpgradingPasswordEncoder implements PasswordEncoder {
+	private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+	private static final String CALIBRATION_PASSWORD = "calibration";
+	private final BCryptPasswordEncoder delegate;
+	private final int strength;
+
+	/**
+	 * @param strength
+	 *            the log rounds of new hashes, between 4 and 31
+	 */
+	public UpgradingPasswordEncoder(int strength) {
+		this.delegate = new BCryptPasswordEncoder(strength);
+		this.strength = strength;
+	}
+
+	/**
+	 * Times BCrypt on the current hardware and keeps the highest strength
+	 * whose hash takes at most {@code targetMillis}. Each additional round
+	 * doubles the work, so the search stops as soon as the next strength would
+	 * miss the target
+	 * 
+	 * @param targetMillis
+	 *            the latency of a single hash to aim for
+	 * @param minStrength
+	 *            the strength to use even if it misses the target
+	 * @param maxStrength
+	 *            the highest strength to consider
+	 * @return UpgradingPasswordEncoder the calibrated encoder
+	 */
+	public static UpgradingPasswordEncoder calibrate(long targetMillis, int minStrength, int maxStrength) {
+		long target = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+		// warm up the JIT on cheap hashes first
+		for (int i = 0; i < 10; i++)
+			time(4);
+		int strength = minStrength;
+		long nanos = time(strength);
+		while (strength < maxStrength && nanos * 2 <= target) {
+			long next = time(strength + 1);
+			if (next > target)
+				break;
+			strength++;
+			nanos = next;
+		}
+		log.info("Calibrated BCrypt strength {} ({} ms per hash) for a target of {} ms", strength, TimeUnit.NANOSECONDS.toMillis(nanos),
+				targetMillis);
+		return new UpgradingPasswordEncoder(strength);
+	}
+
+	/**
+	 * The fastest of two hashes at {@code strength}
+	 */
+	private static long time(int strength) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 2; i++) {
+			long start = System.nanoTime();
+			BCrypt.hashpw(CALIBRATION_PASSWORD, BCrypt.gensalt(strength));
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	/**
+	 * @param encodedPassword
+	 *            a BCrypt hash
+	 * @return int the strength the hash was computed with or {@code -1} when
+	 *         it is not a BCrypt hash
+	 */
+	public static int strength(String encodedPassword) {
+		if (encodedPassword == null)
+			return -1;
+		Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+		return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+	}
+
+	public int getStrength() {
+		return strength;
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return delegate.encode(rawPassword);
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return delegate.matches(rawPassword, encodedPassword);
+	}
+
+	/**
+	 * @param encodedPassword
+	 *            the stored hash of a password that just matched
+	 * @return boolean {@code true} if the hash is weaker than new hashes
+	 */
+	public boolean upgradeEncoding(String encodedPassword) {
+		int current = strength(encodedPassword);
+		return current != -1 && current < strength;
+	}
+}
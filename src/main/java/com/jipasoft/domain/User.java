@@ -26,11 +26,15 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -50,12 +54,20 @@ import lombok.ToString;
 @Entity
 @Document(collection = "account")
 @Table(name = "account")
+// merges of loaded users write only the changed columns
+@DynamicUpdate
+@NamedEntityGraph(name = User.WITH_AUTHORITIES, attributeNodes = @NamedAttributeNode("authorities"))
 @ToString(exclude = { "password", "authorities" })
 @EqualsAndHashCode(callSuper = true)
 public class User extends AbstractAuditEntity implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Entity graph that fetches the authorities together with the user
+	 */
+	public static final String WITH_AUTHORITIES = "User.authorities";
+
 	@Id
 	@org.springframework.data.annotation.Id
 	@GeneratedValue(generator = "uuid2")
@@ -104,6 +116,8 @@ public class User extends AbstractAuditEntity implements Serializable {
 	private ZonedDateTime resetDate = null;
 
 	@ManyToMany
+	// initialize the authorities of up to 50 loaded users in one statement
+	@BatchSize(size = 50)
 	//@formatter:off
 	@JoinTable(name = "user_role", inverseJoinColumns = {
 			@JoinColumn(name = "role_name")
@@ -0,0 +1,72 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.domain.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk account import. It reports the number of rows processed
+ * and the time spent in each stage of the import pipeline
+ * 
+ * @author Julius Krah
+ *
+ */
+@Data
+public class ImportReport {
+	/**
+	 * Only the first rejections are reported, the rest are counted
+	 */
+	public static final int MAX_ERRORS = 100;
+
+	private long read;
+	private long imported;
+	private long rejected;
+	private long parseMillis;
+	private long hashMillis;
+	private long writeMillis;
+	private long totalMillis;
+	private List<String> errors = new ArrayList<>();
+
+	public void reject(long line, String reason) {
+		rejected++;
+		if (errors.size() < MAX_ERRORS)
+			errors.add(String.format("line %d: %s", line, reason));
+	}
+
+	/**
+	 * @return rows imported per second over the whole import
+	 */
+	public long getRowsPerSecond() {
+		return imported * 1000 / Math.max(1, totalMillis);
+	}
+
+	/**
+	 * @return rows hashed per second of hashing pool busy time
+	 */
+	public long getHashedPerSecond() {
+		return (imported + rejected) * 1000 / Math.max(1, hashMillis);
+	}
+
+	/**
+	 * @return rows written per second of datastore time
+	 */
+	public long getWrittenPerSecond() {
+		return imported * 1000 / Math.max(1, writeMillis);
+	}
+}
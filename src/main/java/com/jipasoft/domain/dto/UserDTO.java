@@ -24,10 +24,9 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 
-import org.springframework.security.crypto.password.PasswordEncoder;
-
 import com.jipasoft.domain.Authority;
 import com.jipasoft.domain.User;
+import com.jipasoft.service.PasswordHashingService;
 
 import lombok.Data;
 
@@ -72,10 +71,17 @@ public class UserDTO {
 	@NotNull
 	private ZonedDateTime createdDate = ZonedDateTime.now();
 
-	public User createUser(PasswordEncoder encoder) {
+	/**
+	 * Builds a new account from the form, hashing its password once
+	 * 
+	 * @param hashing
+	 *            the service hashing the password
+	 * @return User the new account
+	 */
+	public User createUser(PasswordHashingService hashing) {
 		User user = new User();
 		user.setLogin(login);
-		user.setPassword(encoder.encode(password));
+		user.setPassword(hashing.hash(password));
 		user.setFirstName(firstName);
 		user.setLastName(lastName);
 		user.setEmail(email);
@@ -0,0 +1,50 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.domain.dto;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+import com.jipasoft.domain.User;
+
+import lombok.Value;
+
+/**
+ * Immutable read model of a {@link User}. Repositories build it straight from
+ * the selected columns, so list and edit views neither hydrate managed
+ * entities nor read the password hash and lazy collections
+ * 
+ * @author Julius Krah
+ *
+ */
+@Value
+public class UserSummary implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String id;
+	private String login;
+	private String firstName;
+	private String lastName;
+	private String email;
+	private boolean activated;
+	private String createdBy;
+	private ZonedDateTime createdDate;
+
+	public static UserSummary of(User user) {
+		return new UserSummary(user.getId(), user.getLogin(), user.getFirstName(), user.getLastName(), user.getEmail(), user.isActivated(),
+				user.getCreatedBy(), user.getCreatedDate());
+	}
+}
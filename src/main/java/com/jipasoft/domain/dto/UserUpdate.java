@@ -0,0 +1,103 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.domain.dto;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.jipasoft.domain.User;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The fields to change on one {@link User}. Only the fields that were set are
+ * written, repositories turn them into a single {@code UPDATE ... SET} or
+ * {@code $set} without loading the entity. A field set to {@code null} is
+ * cleared
+ * 
+ * @author Julius Krah
+ *
+ */
+@ToString(of = { "id", "changes" })
+public class UserUpdate {
+	@Getter
+	private final String id;
+	private final Map<String, Object> changes = new LinkedHashMap<>();
+	private final List<Consumer<User>> setters = new ArrayList<>();
+
+	public UserUpdate(String id) {
+		this.id = id;
+	}
+
+	public UserUpdate login(String login) {
+		return set("login", login, user -> user.setLogin(login));
+	}
+
+	public UserUpdate firstName(String firstName) {
+		return set("firstName", firstName, user -> user.setFirstName(firstName));
+	}
+
+	public UserUpdate lastName(String lastName) {
+		return set("lastName", lastName, user -> user.setLastName(lastName));
+	}
+
+	public UserUpdate email(String email) {
+		return set("email", email, user -> user.setEmail(email));
+	}
+
+	public UserUpdate activated(boolean activated) {
+		return set("activated", activated, user -> user.setActivated(activated));
+	}
+
+	public UserUpdate lastModified(String lastModifiedBy, ZonedDateTime lastModifiedDate) {
+		set("lastModifiedBy", lastModifiedBy, user -> user.setLastModifiedBy(lastModifiedBy));
+		return set("lastModifiedDate", lastModifiedDate, user -> user.setLastModifiedDate(lastModifiedDate));
+	}
+
+	private UserUpdate set(String property, Object value, Consumer<User> setter) {
+		changes.put(property, value);
+		setters.add(setter);
+		return this;
+	}
+
+	/**
+	 * @return the changed values keyed by {@link User} property name, in the
+	 *         order they were set
+	 */
+	public Map<String, Object> getChanges() {
+		return Collections.unmodifiableMap(changes);
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Sets the changed fields on {@code user}
+	 * 
+	 * @param user
+	 *            the user to change
+	 */
+	public void applyTo(User user) {
+		setters.forEach(setter -> setter.accept(user));
+	}
+}
@@ -16,8 +16,10 @@
 package com.jipasoft.repository;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.context.annotation.Profile;
 
@@ -43,6 +45,24 @@ public interface BaseRepository<T, ID extends Serializable> {
 	 */
 	public void save(T entity);
 
+	/**
+	 * Saves or Updates all {@code entities} in batches instead of one round
+	 * trip per entity
+	 * 
+	 * @param entities
+	 *            the entities to {@code save} or {@code update}
+	 */
+	public void saveAll(Collection<T> entities);
+
+	/**
+	 * Inserts {@code entity} or replaces the stored entity with the same
+	 * identifier in one statement, without loading it first
+	 * 
+	 * @param entity
+	 *            the entity to insert or replace
+	 */
+	public void upsert(T entity);
+
 	/**
 	 * Deletes an {@code entity} from the underlying datastore
 	 * 
@@ -51,11 +71,29 @@ public interface BaseRepository<T, ID extends Serializable> {
 	 */
 	public void delete(T entity);
 
+	/**
+	 * Deletes the entity with the given identifier in one statement, without
+	 * loading it first
+	 * 
+	 * @param id
+	 *            the identifier of the entity to delete
+	 * @return the number of deleted entities, 0 if none has the identifier
+	 */
+	public int deleteById(ID id);
+
 	/**
 	 * Deletes all records from the {@code Entity} table
 	 */
 	public void deleteAll();
 
+	/**
+	 * Deletes all entities with the given identifiers in batches
+	 * 
+	 * @param ids
+	 *            the identifiers of the entities to delete
+	 */
+	public void deleteAllById(Collection<ID> ids);
+
 	/**
 	 * Gets all entities from the database
 	 * 
@@ -63,6 +101,30 @@ public interface BaseRepository<T, ID extends Serializable> {
 	 */
 	public List<T> findAll();
 
+	/**
+	 * Gets a page of entities ordered by their identifier. This is keyset
+	 * pagination; each page starts right after the identifier of the last
+	 * entity of the previous page, so the cost of a page does not grow with its
+	 * position in the datastore
+	 * 
+	 * @param afterId
+	 *            the identifier of the last entity of the previous page or
+	 *            {@code null} for the first page
+	 * @param limit
+	 *            the maximum number of entities in the page
+	 * @return List<T> the entities following {@code afterId}
+	 */
+	public List<T> findPage(ID afterId, int limit);
+
+	/**
+	 * Streams all entities from the database over a cursor instead of
+	 * materializing them in a list. The stream must be consumed within a
+	 * transaction and closed after use
+	 * 
+	 * @return Stream<T> stream of entities
+	 */
+	public Stream<T> streamAll();
+
 	/**
 	 * Retrieves an {@code entity} entity from the underlying datastore by its
 	 * id
@@ -0,0 +1,69 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Streams of entities read over a cursor that detach each entity from the
+ * persistence context once the consumer moves on to the next one. Read-only
+ * entities skip the dirty checking, but stay in the persistence context until
+ * it is cleared; detached, the persistence context does not grow with the
+ * size of the result
+ * 
+ * @author Julius Krah
+ *
+ */
+public final class DetachingStream {
+
+	private DetachingStream() {
+	}
+
+	/**
+	 * @param em
+	 *            the entity manager the entities are loaded by
+	 * @param results
+	 *            the stream to wrap
+	 * @return Stream<T> the wrapped stream, closing {@code results} on close
+	 */
+	public static <T> Stream<T> of(EntityManager em, Stream<T> results) {
+		Iterator<T> iterator = results.iterator();
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			private T previous;
+
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				if (previous != null)
+					em.detach(previous);
+				if (!iterator.hasNext()) {
+					previous = null;
+					return false;
+				}
+				previous = iterator.next();
+				action.accept(previous);
+				return true;
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(results::close);
+	}
+}
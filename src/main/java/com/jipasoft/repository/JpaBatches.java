@@ -0,0 +1,109 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Batched writes of the JPA repositories, shared by the {@code postgres}
+ * repositories and the {@code h2} spring data fragments. The persistence
+ * context is flushed and cleared after every batch, so the statements reach
+ * the database as JDBC batches and the persistence context does not grow with
+ * the number of entities
+ * 
+ * @author Julius Krah
+ *
+ */
+public final class JpaBatches {
+
+	private JpaBatches() {
+	}
+
+	/**
+	 * Persists the entities without identifier and merges the others, which
+	 * may be detached
+	 * 
+	 * @param em
+	 *            the entity manager of the current transaction
+	 * @param entities
+	 *            the entities to insert or update
+	 * @param batchSize
+	 *            the number of entities per batch
+	 * @return the number of entities saved
+	 */
+	public static <T> int saveAll(EntityManager em, Collection<T> entities, int batchSize) {
+		int count = 0;
+		for (T entity : entities) {
+			save(em, entity);
+			if (++count % batchSize == 0) {
+				em.flush();
+				em.clear();
+			}
+		}
+		em.flush();
+		em.clear();
+		return count;
+	}
+
+	/**
+	 * Persists {@code entity} when it has no identifier, merges it otherwise.
+	 * A detached entity with an identifier cannot be persisted
+	 * 
+	 * @param em
+	 *            the entity manager of the current transaction
+	 * @param entity
+	 *            the entity to insert or update
+	 */
+	public static <T> void save(EntityManager em, T entity) {
+		if (em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity) == null)
+			em.persist(entity);
+		else
+			em.merge(entity);
+	}
+
+	/**
+	 * Deletes the entities with the given identifiers with one bulk
+	 * {@code DELETE ... WHERE id IN} per batch, without loading them.
+	 * Hibernate clears the association tables of the entity with it. Pending
+	 * changes are flushed first and the persistence context is cleared after,
+	 * it would still hold the deleted entities
+	 * 
+	 * @param em
+	 *            the entity manager of the current transaction
+	 * @param entityName
+	 *            the JPQL name of the entity
+	 * @param ids
+	 *            the identifiers of the entities to delete
+	 * @param batchSize
+	 *            the number of identifiers per statement
+	 * @return the number of entities deleted
+	 */
+	public static int deleteAllById(EntityManager em, String entityName, Collection<?> ids, int batchSize) {
+		String jpql = String.format("DELETE FROM %s e WHERE e.id IN :ids", entityName);
+		List<?> remaining = new ArrayList<>(ids);
+		int deleted = 0;
+		em.flush();
+		for (int i = 0; i < remaining.size(); i += batchSize)
+			deleted += em.createQuery(jpql).setParameter("ids", remaining.subList(i, Math.min(i + batchSize, remaining.size())))
+					.executeUpdate();
+		em.clear();
+		return deleted;
+	}
+}
@@ -15,11 +15,16 @@
 */
 package com.jipasoft.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.data.repository.NoRepositoryBean;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 
 /**
  * Repository interface for the {@link User} entity. It contains methods for
@@ -64,4 +69,67 @@ public interface UserRepository extends BaseRepository<User, String> {
 	 */
 	public Optional<User> findOneByLogin(String login);
 
+	/**
+	 * Retrieves a {@link User} entity together with its authorities in a
+	 * single round trip
+	 * 
+	 * @param login
+	 *            the username
+	 * @return a User entity with initialized authorities
+	 * @see User#WITH_AUTHORITIES
+	 */
+	public Optional<User> findOneWithAuthoritiesByLogin(String login);
+
+	/**
+	 * Retrieves the {@link UserSummary} of a user by its id without loading the
+	 * entity
+	 * 
+	 * @param id
+	 *            the user identifier
+	 * @return the read model of the user
+	 */
+	public Optional<UserSummary> findSummaryById(String id);
+
+	/**
+	 * Gets a page of {@link UserSummary} ordered by id
+	 * 
+	 * @param afterId
+	 *            the id of the last user of the previous page or {@code null}
+	 *            for the first page
+	 * @param limit
+	 *            the maximum number of users in the page
+	 * @return the read models of the users following {@code afterId}
+	 * @see #findPage(java.io.Serializable, int)
+	 */
+	public List<UserSummary> findSummaryPage(String afterId, int limit);
+
+	/**
+	 * Streams the {@link UserSummary} of all users over a cursor. The stream
+	 * must be consumed within a transaction and closed after use
+	 * 
+	 * @return stream of read models ordered by id
+	 */
+	public Stream<UserSummary> streamAllSummaries();
+
+	/**
+	 * Writes the fields of {@code update} in one round trip without loading the
+	 * user. Bypasses the persistence context and the auditing listeners
+	 * 
+	 * @param update
+	 *            the id of the user and the fields to change
+	 * @return the number of updated users, 0 if no user has the id
+	 */
+	public int update(UserUpdate update);
+
+	/**
+	 * Reads the stored logins of users, ignoring changes not yet flushed to the
+	 * datastore: for a user about to be renamed this is the login before the
+	 * change
+	 * 
+	 * @param ids
+	 *            the user identifiers
+	 * @return the logins of the users found, in no particular order
+	 */
+	public List<String> findLoginsById(Collection<String> ids);
+
 }
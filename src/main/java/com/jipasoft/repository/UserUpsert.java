@@ -0,0 +1,137 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.BooleanType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.ZonedDateTimeType;
+
+import com.jipasoft.domain.User;
+
+/**
+ * Writes the {@code account} row of a {@link User} with a single native
+ * statement: {@code INSERT ... ON CONFLICT} on PostgreSQL and
+ * {@code MERGE ... USING} on H2. Other databases fall back to
+ * {@link EntityManager#merge(Object) merge}; MySQL's
+ * {@code ON DUPLICATE KEY UPDATE} would also fire for a taken login or email
+ * and overwrite that account.
+ * <p>
+ * The statement replaces every column of an existing row but
+ * {@code created_by} and {@code created_date}. It does not write the
+ * {@code user_role} rows and bypasses the persistence context.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public final class UserUpsert {
+	/**
+	 * The columns of the {@code account} table and their types
+	 */
+	private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+	/**
+	 * The columns only written by an insert
+	 */
+	private static final List<String> INSERT_ONLY = Arrays.asList("id", "created_by", "created_date");
+	private static final String POSTGRES_UPSERT;
+	private static final String H2_UPSERT;
+
+	static {
+		COLUMNS.put("id", "CHAR(36)");
+		COLUMNS.put("login", "VARCHAR(100)");
+		COLUMNS.put("password_hash", "VARCHAR(60)");
+		COLUMNS.put("first_name", "VARCHAR(50)");
+		COLUMNS.put("last_name", "VARCHAR(50)");
+		COLUMNS.put("email", "VARCHAR(100)");
+		COLUMNS.put("activated", "BOOLEAN");
+		COLUMNS.put("activation_key", "VARCHAR(20)");
+		COLUMNS.put("reset_key", "VARCHAR(20)");
+		COLUMNS.put("reset_date", "TIMESTAMP");
+		COLUMNS.put("created_by", "VARCHAR(50)");
+		COLUMNS.put("created_date", "TIMESTAMP");
+		COLUMNS.put("last_modified_by", "VARCHAR(50)");
+		COLUMNS.put("last_modified_date", "TIMESTAMP");
+		List<String> updated = COLUMNS.keySet().stream().filter(column -> !INSERT_ONLY.contains(column)).collect(Collectors.toList());
+		String columns = String.join(", ", COLUMNS.keySet());
+
+		POSTGRES_UPSERT = String.format("INSERT INTO account (%s) VALUES (%s) ON CONFLICT (id) DO UPDATE SET %s", columns,
+				COLUMNS.keySet().stream().map(column -> ":" + column).collect(Collectors.joining(", ")),
+				updated.stream().map(column -> String.format("%1$s = EXCLUDED.%1$s", column)).collect(Collectors.joining(", ")));
+		// the parameters are cast, H2 cannot type a bare parameter of a derived table
+		H2_UPSERT = String.format(
+				"MERGE INTO account a USING (SELECT %s) v ON (a.id = v.id) WHEN MATCHED THEN UPDATE SET %s WHEN NOT MATCHED THEN INSERT (%s) VALUES (%s)",
+				COLUMNS.entrySet().stream().map(column -> String.format("CAST(:%1$s AS %2$s) %1$s", column.getKey(), column.getValue()))
+						.collect(Collectors.joining(", ")),
+				updated.stream().map(column -> String.format("%1$s = v.%1$s", column)).collect(Collectors.joining(", ")), columns,
+				COLUMNS.keySet().stream().map(column -> "v." + column).collect(Collectors.joining(", ")));
+	}
+
+	private UserUpsert() {
+	}
+
+	/**
+	 * Inserts {@code user} or replaces the row with its id. A user without id
+	 * gets a new one
+	 * 
+	 * @param em
+	 *            the entity manager of the current transaction
+	 * @param user
+	 *            the user to write
+	 */
+	public static void upsert(EntityManager em, User user) {
+		Dialect dialect = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+		String sql = dialect instanceof PostgreSQL81Dialect ? POSTGRES_UPSERT : dialect instanceof H2Dialect ? H2_UPSERT : null;
+		if (sql == null) {
+			em.merge(user);
+			return;
+		}
+		if (user.getId() == null)
+			user.setId(UUID.randomUUID().toString());
+		// typed, so that null values bind as the column types
+		//@formatter:off
+		em.createNativeQuery(sql).unwrap(NativeQuery.class)
+			.setParameter("id", user.getId(), StringType.INSTANCE)
+			.setParameter("login", user.getLogin(), StringType.INSTANCE)
+			.setParameter("password_hash", user.getPassword(), StringType.INSTANCE)
+			.setParameter("first_name", user.getFirstName(), StringType.INSTANCE)
+			.setParameter("last_name", user.getLastName(), StringType.INSTANCE)
+			.setParameter("email", user.getEmail(), StringType.INSTANCE)
+			.setParameter("activated", user.isActivated(), BooleanType.INSTANCE)
+			.setParameter("activation_key", user.getActivationKey(), StringType.INSTANCE)
+			.setParameter("reset_key", user.getResetKey(), StringType.INSTANCE)
+			.setParameter("reset_date", user.getResetDate(), ZonedDateTimeType.INSTANCE)
+			.setParameter("created_by", user.getCreatedBy(), StringType.INSTANCE)
+			.setParameter("created_date", user.getCreatedDate(), ZonedDateTimeType.INSTANCE)
+			.setParameter("last_modified_by", user.getLastModifiedBy(), StringType.INSTANCE)
+			.setParameter("last_modified_date", user.getLastModifiedDate(), ZonedDateTimeType.INSTANCE)
+			.executeUpdate();
+		//@formatter:on
+	}
+}
@@ -0,0 +1,93 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.h2;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserUpdate;
+
+/**
+ * Operations of {@link UserRepositoryImpl} that cannot be derived by spring
+ * data and are implemented by hand in {@link UserRepositoryCustomImpl}
+ * 
+ * @author Julius Krah
+ *
+ */
+public interface UserRepositoryCustom {
+
+	/**
+	 * Saves or Updates all {@code users} using JDBC batching
+	 * 
+	 * @param users
+	 *            the users to {@code save} or {@code update}
+	 */
+	public void saveAll(Collection<User> users);
+
+	/**
+	 * Streams all users with their authorities, detaching each user once the
+	 * next one is read
+	 * 
+	 * @return stream of users ordered by id
+	 */
+	public Stream<User> streamAll();
+
+	/**
+	 * Deletes all users with the given identifiers in batches
+	 * 
+	 * @param ids
+	 *            the identifiers of the users to delete
+	 */
+	public void deleteAllById(Collection<String> ids);
+
+	/**
+	 * Inserts {@code user} or replaces the user with its id in one statement
+	 * 
+	 * @param user
+	 *            the user to insert or replace
+	 */
+	public void upsert(User user);
+
+	/**
+	 * Deletes the user with the given identifier in one statement
+	 * 
+	 * @param id
+	 *            the identifier of the user to delete
+	 * @return the number of deleted users
+	 */
+	public int deleteById(String id);
+
+	/**
+	 * Writes only the fields of {@code update}
+	 * 
+	 * @param update
+	 *            the id of the user and the fields to change
+	 * @return the number of updated users
+	 */
+	public int update(UserUpdate update);
+
+	/**
+	 * Reads the stored logins of users without flushing the persistence
+	 * context
+	 * 
+	 * @param ids
+	 *            the user identifiers
+	 * @return the logins of the users found
+	 */
+	public List<String> findLoginsById(Collection<String> ids);
+}
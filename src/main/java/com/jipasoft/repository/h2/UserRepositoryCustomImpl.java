@@ -0,0 +1,146 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.h2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.hibernate.annotations.QueryHints;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserUpdate;
+import com.jipasoft.repository.DetachingStream;
+import com.jipasoft.repository.JpaBatches;
+import com.jipasoft.repository.UserUpsert;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Spring data JPA picks this class up as the implementation of
+ * {@link UserRepositoryCustom}. The persistence context is flushed and cleared
+ * after every {@code hibernate.jdbc.batch_size} users, so the inserts are sent
+ * to the database as JDBC batches
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+	@PersistenceContext
+	private EntityManager em;
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int batchSize;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void saveAll(Collection<User> users) {
+		int count = JpaBatches.saveAll(this.em, users, batchSize);
+		log.debug("Saved {} users in batches of {}", count, batchSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Authorities are fetched in the same statement. The rows are ordered by
+	 * id so that the cursor can group the rows of each user
+	 * </p>
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Stream<User> streamAll() {
+		TypedQuery<User> query = this.em.createQuery("SELECT u FROM User u LEFT JOIN FETCH u.authorities ORDER BY u.id", User.class);
+		query.setHint(QueryHints.FETCH_SIZE, 500);
+		query.setHint(QueryHints.READ_ONLY, true);
+		return DetachingStream.of(this.em, query.unwrap(org.hibernate.query.Query.class).stream());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deleteAllById(Collection<String> ids) {
+		int deleted = JpaBatches.deleteAllById(this.em, "User", ids, batchSize);
+		log.debug("Deleted {} users in batches of {}", deleted, batchSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The authorities are not written
+	 * </p>
+	 * 
+	 * @see UserUpsert
+	 */
+	@Override
+	public void upsert(User user) {
+		UserUpsert.upsert(this.em, user);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A bulk {@code DELETE}; Hibernate clears the {@code user_role} rows with
+	 * it
+	 * </p>
+	 */
+	@Override
+	public int deleteById(String id) {
+		return this.em.createQuery("DELETE FROM User u WHERE u.id = :id").setParameter("id", id).executeUpdate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int update(UserUpdate update) {
+		if (update.isEmpty())
+			return 0;
+		String set = update.getChanges().keySet().stream().map(property -> String.format("u.%1$s = :%1$s", property))
+				.collect(Collectors.joining(", "));
+		Query query = this.em.createQuery("UPDATE User u SET " + set + " WHERE u.id = :id").setParameter("id", update.getId());
+		update.getChanges().forEach(query::setParameter);
+		return query.executeUpdate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> findLoginsById(Collection<String> ids) {
+		List<String> remaining = new ArrayList<>(ids);
+		List<String> logins = new ArrayList<>(remaining.size());
+		for (int i = 0; i < remaining.size(); i += batchSize) {
+			List<String> batch = remaining.subList(i, Math.min(i + batchSize, remaining.size()));
+			logins.addAll(this.em.createQuery("SELECT u.login FROM User u WHERE u.id IN :ids", String.class).setParameter("ids", batch)
+					.setFlushMode(FlushModeType.COMMIT).getResultList());
+		}
+		return logins;
+	}
+
+}
@@ -15,9 +15,21 @@
 */
 package com.jipasoft.repository.h2;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
 import com.jipasoft.repository.UserRepository;
 
 /**
@@ -26,6 +38,59 @@ import com.jipasoft.repository.UserRepository;
  * @author Julius Krah
  *
  */
-public interface UserRepositoryImpl extends UserRepository, Repository<User, String> {
+public interface UserRepositoryImpl extends UserRepository, UserRepositoryCustom, Repository<User, String> {
+	//@formatter:off
+	public static final String SELECT_SUMMARY = "SELECT new com.jipasoft.domain.dto.UserSummary("
+			+ "u.id, u.login, u.firstName, u.lastName, u.email, u.activated, u.createdBy, u.createdDate) FROM User u";
+	//@formatter:on
+
+	public List<User> findAllByOrderByIdAsc(Pageable pageable);
+
+	public List<User> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public default List<User> findPage(String afterId, int limit) {
+		Pageable page = PageRequest.of(0, limit);
+		return afterId == null ? findAllByOrderByIdAsc(page) : findByIdGreaterThanOrderByIdAsc(afterId, page);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@EntityGraph(User.WITH_AUTHORITIES)
+	public Optional<User> findOneWithAuthoritiesByLogin(String login);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Query(SELECT_SUMMARY + " WHERE u.id = ?1")
+	public Optional<UserSummary> findSummaryById(String id);
+
+	@Query(SELECT_SUMMARY + " ORDER BY u.id")
+	public List<UserSummary> findSummaries(Pageable pageable);
+
+	@Query(SELECT_SUMMARY + " WHERE u.id > ?1 ORDER BY u.id")
+	public List<UserSummary> findSummariesAfter(String id, Pageable pageable);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public default List<UserSummary> findSummaryPage(String afterId, int limit) {
+		Pageable page = PageRequest.of(0, limit);
+		return afterId == null ? findSummaries(page) : findSummariesAfter(afterId, page);
+	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Query(SELECT_SUMMARY + " ORDER BY u.id")
+	@org.springframework.data.jpa.repository.QueryHints(@QueryHint(name = QueryHints.FETCH_SIZE, value = "500"))
+	public Stream<UserSummary> streamAllSummaries();
 }
@@ -0,0 +1,297 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.jipasoft.repository.BaseRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory datastore is the underlying db. Entities are kept in a
+ * {@link ConcurrentHashMap} keyed by id; the ids are also kept in a
+ * {@link ConcurrentSkipListSet} for keyset paging and ordered streaming.
+ * <p>
+ * The maps store copies, so entities returned by the repository are detached
+ * and changes to them are only visible after {@link #save(Object) save}. No
+ * method takes a lock: uniqueness across entities is enforced by the
+ * {@link Index indexes} with {@code putIfAbsent}, concurrent saves of the same
+ * entity are last-writer-wins.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ * @param <T>
+ *            The entity type
+ * @param <ID>
+ *            The entity identifier
+ */
+@Slf4j
+public abstract class BaseRepositoryImpl<T extends Serializable, ID extends Serializable & Comparable<? super ID>>
+		implements BaseRepository<T, ID> {
+	protected final ConcurrentMap<ID, T> store = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListSet<ID> ids = new ConcurrentSkipListSet<>();
+
+	/**
+	 * Returns the id of {@code entity}, generating one first if it has none
+	 */
+	protected abstract ID identify(T entity);
+
+	/**
+	 * Returns a copy of {@code entity} sharing no mutable state with it
+	 */
+	protected abstract T copy(T entity);
+
+	/**
+	 * Adds the keys of {@code current} to the secondary indexes. Must throw
+	 * {@link DataIntegrityViolationException} without leaving any key behind
+	 * when a unique key belongs to another entity
+	 * 
+	 * @param id
+	 *            the id of the entity
+	 * @param current
+	 *            the state being saved
+	 */
+	protected abstract void index(ID id, T current);
+
+	/**
+	 * Removes the keys of {@code previous} that {@code current} no longer has
+	 * from the secondary indexes
+	 * 
+	 * @param id
+	 *            the id of the entity
+	 * @param previous
+	 *            the state that was replaced or removed
+	 * @param current
+	 *            the state that replaced it or {@code null} when removed
+	 */
+	protected abstract void unindex(ID id, T previous, T current);
+
+	@Override
+	public void save(T entity) {
+		ID id = identify(entity);
+		T value = copy(entity);
+		index(id, value);
+		T previous = store.put(id, value);
+		ids.add(id);
+		if (previous != null)
+			unindex(id, previous, value);
+	}
+
+	@Override
+	public void saveAll(Collection<T> entities) {
+		entities.forEach(this::save);
+		log.debug("Saved {} entities", entities.size());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Same as {@link #save(Object) save}, which never loads the entity
+	 * </p>
+	 */
+	@Override
+	public void upsert(T entity) {
+		save(entity);
+	}
+
+	@Override
+	public void delete(T entity) {
+		remove(identify(entity));
+	}
+
+	@Override
+	public int deleteById(ID id) {
+		return remove(id) ? 1 : 0;
+	}
+
+	@Override
+	public void deleteAll() {
+		ids.forEach(this::remove);
+	}
+
+	@Override
+	public void deleteAllById(Collection<ID> ids) {
+		ids.forEach(this::remove);
+	}
+
+	private boolean remove(ID id) {
+		T removed = store.remove(id);
+		ids.remove(id);
+		if (removed == null)
+			return false;
+		unindex(id, removed, null);
+		return true;
+	}
+
+	@Override
+	public List<T> findAll() {
+		return store.values().stream().map(this::copy).collect(Collectors.toList());
+	}
+
+	@Override
+	public List<T> findPage(ID afterId, int limit) {
+		return page(afterId, limit, this::copy);
+	}
+
+	@Override
+	public Stream<T> streamAll() {
+		return ordered(this::copy);
+	}
+
+	@Override
+	public Optional<T> findOneById(ID id) {
+		return Optional.ofNullable(store.get(id)).map(this::copy);
+	}
+
+	/**
+	 * Maps the entities following {@code afterId} in id order
+	 */
+	protected <R> List<R> page(ID afterId, int limit, Function<T, R> mapper) {
+		Collection<ID> tail = afterId == null ? ids : ids.tailSet(afterId, false);
+		return tail.stream().map(store::get).filter(Objects::nonNull).limit(limit).map(mapper).collect(Collectors.toList());
+	}
+
+	/**
+	 * Maps all entities in id order
+	 */
+	protected <R> Stream<R> ordered(Function<T, R> mapper) {
+		return ids.stream().map(store::get).filter(Objects::nonNull).map(mapper);
+	}
+
+	/**
+	 * Looks up the entity owning {@code key} in {@code index}. The entity is
+	 * read again to skip an index entry that is being replaced
+	 */
+	protected Optional<T> findOne(Index<ID> index, String key, Function<T, String> attribute) {
+		return index.get(key).map(store::get).filter(entity -> Objects.equals(key, attribute.apply(entity))).map(this::copy);
+	}
+
+	/**
+	 * Writes all entities to {@code file}, replacing it atomically
+	 * 
+	 * @param file
+	 *            the snapshot file
+	 */
+	public void snapshot(Path file) {
+		List<T> entities = new ArrayList<>(store.values());
+		try {
+			Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+			try (ObjectOutputStream out = new ObjectOutputStream(
+					new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))) {
+				out.writeObject(entities);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		log.info("Wrote {} entities to snapshot {}", entities.size(), file);
+	}
+
+	/**
+	 * Saves all entities of a snapshot written by {@link #snapshot(Path)}
+	 * 
+	 * @param file
+	 *            the snapshot file
+	 */
+	@SuppressWarnings("unchecked")
+	public void restore(Path file) {
+		List<T> entities;
+		try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+			entities = (List<T>) in.readObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+		saveAll(entities);
+		log.info("Restored {} entities from snapshot {}", entities.size(), file);
+	}
+
+	/**
+	 * A concurrent secondary index from an attribute to the id of the entity
+	 * holding it
+	 * 
+	 * @param <ID>
+	 *            The entity identifier
+	 */
+	protected static final class Index<ID> {
+		private final String name;
+		private final boolean unique;
+		private final ConcurrentMap<String, ID> entries = new ConcurrentHashMap<>();
+
+		public Index(String name, boolean unique) {
+			this.name = name;
+			this.unique = unique;
+		}
+
+		public Optional<ID> get(String key) {
+			return key == null ? Optional.empty() : Optional.ofNullable(entries.get(key));
+		}
+
+		/**
+		 * Points {@code key} to {@code id}
+		 * 
+		 * @return true if the key was added, false if it was already there or
+		 *         is {@code null}
+		 * @throws DataIntegrityViolationException
+		 *             if the index is unique and another entity holds the key
+		 */
+		public boolean claim(String key, ID id) {
+			if (key == null)
+				return false;
+			if (!unique)
+				return !id.equals(entries.put(key, id));
+			ID owner = entries.putIfAbsent(key, id);
+			if (owner != null && !owner.equals(id))
+				throw new DataIntegrityViolationException(String.format("Duplicate %s: %s", name, key));
+			return owner == null;
+		}
+
+		/**
+		 * Removes {@code key} if it still points to {@code id}
+		 */
+		public void release(String key, ID id) {
+			if (key != null)
+				entries.remove(key, id);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.memory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
+import com.jipasoft.repository.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * User repository implementation over concurrent maps. Login and email are
+ * unique like the {@code account} table columns; the reset key index is not.
+ * <p>
+ * When {@code memory.snapshot} names a file, the users are restored from it on
+ * startup and written to it on shutdown. Without a snapshot the users of
+ * {@code db/data} are loaded, as Liquibase does for the SQL profiles.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@Repository
+public class UserRepositoryImpl extends BaseRepositoryImpl<User, String> implements UserRepository {
+	private final Index<String> byLogin = new Index<>("login", true);
+	private final Index<String> byEmail = new Index<>("email", true);
+	private final Index<String> byResetKey = new Index<>("reset key", false);
+
+	@Value("${memory.snapshot:}")
+	private String snapshot;
+
+	@PostConstruct
+	public void load() {
+		Path file = snapshot == null || snapshot.isEmpty() ? null : Paths.get(snapshot);
+		if (file != null && Files.exists(file))
+			restore(file);
+		else
+			seed();
+	}
+
+	@PreDestroy
+	public void close() {
+		if (snapshot != null && !snapshot.isEmpty())
+			snapshot(Paths.get(snapshot));
+	}
+
+	private void seed() {
+		Map<String, Set<Authority>> authorities = new HashMap<>();
+		for (String[] row : csv("db/data/user_role.csv"))
+			authorities.computeIfAbsent(row[0], id -> new HashSet<>()).add(new Authority(row[1]));
+		List<User> users = new ArrayList<>();
+		for (String[] row : csv("db/data/account.csv")) {
+			User user = new User();
+			user.setId(row[0]);
+			user.setLogin(row[1]);
+			user.setPassword(row[2]);
+			user.setFirstName(row[3]);
+			user.setLastName(row[4]);
+			user.setEmail(row[5]);
+			user.setActivated(Boolean.parseBoolean(row[6]));
+			user.setCreatedBy(row[7]);
+			user.setAuthorities(authorities.getOrDefault(row[0], new HashSet<>()));
+			users.add(user);
+		}
+		saveAll(users);
+		log.info("Loaded {} users from db/data", users.size());
+	}
+
+	private static List<String[]> csv(String path) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8))) {
+			return reader.lines().skip(1).filter(line -> !line.isEmpty()).map(line -> line.split(";", -1)).collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	protected String identify(User user) {
+		if (user.getId() == null)
+			user.setId(UUID.randomUUID().toString());
+		return user.getId();
+	}
+
+	@Override
+	protected User copy(User user) {
+		User copy = new User();
+		copy.setId(user.getId());
+		copy.setLogin(user.getLogin());
+		copy.setPassword(user.getPassword());
+		copy.setFirstName(user.getFirstName());
+		copy.setLastName(user.getLastName());
+		copy.setEmail(user.getEmail());
+		copy.setActivated(user.isActivated());
+		copy.setActivationKey(user.getActivationKey());
+		copy.setResetKey(user.getResetKey());
+		copy.setResetDate(user.getResetDate());
+		copy.setCreatedBy(user.getCreatedBy());
+		copy.setCreatedDate(user.getCreatedDate());
+		copy.setLastModifiedBy(user.getLastModifiedBy());
+		copy.setLastModifiedDate(user.getLastModifiedDate());
+		copy.setAuthorities(user.getAuthorities() == null ? null : new HashSet<>(user.getAuthorities()));
+		return copy;
+	}
+
+	@Override
+	protected void index(String id, User user) {
+		boolean login = byLogin.claim(user.getLogin(), id);
+		try {
+			byEmail.claim(user.getEmail(), id);
+		} catch (DataIntegrityViolationException e) {
+			if (login)
+				byLogin.release(user.getLogin(), id);
+			throw e;
+		}
+		byResetKey.claim(user.getResetKey(), id);
+	}
+
+	@Override
+	protected void unindex(String id, User previous, User current) {
+		if (current == null || !Objects.equals(previous.getLogin(), current.getLogin()))
+			byLogin.release(previous.getLogin(), id);
+		if (current == null || !Objects.equals(previous.getEmail(), current.getEmail()))
+			byEmail.release(previous.getEmail(), id);
+		if (current == null || !Objects.equals(previous.getResetKey(), current.getResetKey()))
+			byResetKey.release(previous.getResetKey(), id);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<User> findOneByResetKey(String resetKey) {
+		return findOne(byResetKey, resetKey, User::getResetKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<User> findOneByEmail(String email) {
+		return findOne(byEmail, email, User::getEmail);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<User> findOneByLogin(String login) {
+		return findOne(byLogin, login, User::getLogin);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The authorities are stored with the user
+	 * </p>
+	 */
+	@Override
+	public Optional<User> findOneWithAuthoritiesByLogin(String login) {
+		return findOneByLogin(login);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<UserSummary> findSummaryById(String id) {
+		return Optional.ofNullable(store.get(id)).map(UserSummary::of);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<UserSummary> findSummaryPage(String afterId, int limit) {
+		return page(afterId, limit, UserSummary::of);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Stream<UserSummary> streamAllSummaries() {
+		return ordered(UserSummary::of);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Like a {@link #save(User) save}, concurrent writes of the user are
+	 * last-writer-wins
+	 * </p>
+	 */
+	@Override
+	public int update(UserUpdate update) {
+		User current = store.get(update.getId());
+		if (current == null || update.isEmpty())
+			return 0;
+		User user = copy(current);
+		update.applyTo(user);
+		save(user);
+		return 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * An existing user keeps its creation audit fields
+	 * </p>
+	 */
+	@Override
+	public void upsert(User user) {
+		User current = user.getId() == null ? null : store.get(user.getId());
+		if (current == null) {
+			save(user);
+			return;
+		}
+		User copy = copy(user);
+		copy.setCreatedBy(current.getCreatedBy());
+		copy.setCreatedDate(current.getCreatedDate());
+		save(copy);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> findLoginsById(Collection<String> ids) {
+		return ids.stream().map(store::get).filter(Objects::nonNull).map(User::getLogin).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.mongo;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.model.UpdateOptions;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserUpdate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Spring data MongoDb picks this class up as the implementation of
+ * {@link UserRepositoryCustom}. New users are written with a single
+ * {@code insertMany} and existing users with one unordered bulk of upserts
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+	private static final String[] CREATION_FIELDS = { "created_by", "created_date" };
+	@Inject
+	private MongoOperations mongoOperations;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void saveAll(Collection<User> users) {
+		List<User> inserts = new ArrayList<>();
+		BulkOperations upserts = null;
+		for (User user : users) {
+			if (user.getId() == null) {
+				inserts.add(user);
+				continue;
+			}
+			if (upserts == null)
+				upserts = mongoOperations.bulkOps(BulkMode.UNORDERED, User.class);
+			Document document = new Document();
+			mongoOperations.getConverter().write(user, document);
+			upserts.upsert(query(where("id").is(user.getId())), Update.fromDocument(document, "_id"));
+		}
+		if (!inserts.isEmpty())
+			mongoOperations.insert(inserts, User.class);
+		if (upserts != null)
+			upserts.execute();
+		log.debug("Saved {} users: {} inserted, {} upserted", users.size(), inserts.size(), users.size() - inserts.size());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deleteAllById(Collection<String> ids) {
+		mongoOperations.remove(query(where("id").in(ids)), User.class);
+		log.debug("Deleted {} users", ids.size());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * An {@code updateOne} with upsert, or an insert for a user without id.
+	 * The creation audit fields are only written by {@code $setOnInsert}
+	 * </p>
+	 */
+	@Override
+	public void upsert(User user) {
+		if (user.getId() == null) {
+			mongoOperations.insert(user);
+			return;
+		}
+		Document document = new Document();
+		mongoOperations.getConverter().write(user, document);
+		Object id = document.remove("_id");
+		Document onInsert = new Document();
+		for (String field : CREATION_FIELDS)
+			if (document.containsKey(field))
+				onInsert.put(field, document.remove(field));
+		Document update = new Document("$set", document);
+		if (!onInsert.isEmpty())
+			update.put("$setOnInsert", onInsert);
+		mongoOperations.getCollection(mongoOperations.getCollectionName(User.class)).updateOne(new Document("_id", id), update,
+				new UpdateOptions().upsert(true));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int deleteById(String id) {
+		return (int) mongoOperations.remove(query(where("id").is(id)), User.class).getDeletedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Sends a {@code $set} of the changed fields instead of the whole document
+	 * </p>
+	 */
+	@Override
+	public int update(UserUpdate update) {
+		if (update.isEmpty())
+			return 0;
+		Update set = new Update();
+		update.getChanges().forEach(set::set);
+		return (int) mongoOperations.updateFirst(query(where("id").is(update.getId())), set, User.class).getMatchedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only the {@code login} field is returned
+	 * </p>
+	 */
+	@Override
+	public List<String> findLoginsById(Collection<String> ids) {
+		Query query = query(where("id").in(ids));
+		query.fields().include("login");
+		return mongoOperations.find(query, User.class).stream().map(User::getLogin).collect(Collectors.toList());
+	}
+
+}
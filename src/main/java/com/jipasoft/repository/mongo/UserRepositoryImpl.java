@@ -15,9 +15,17 @@
 */
 package com.jipasoft.repository.mongo;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.Repository;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
 import com.jipasoft.repository.UserRepository;
 
 /**
@@ -27,6 +35,66 @@ import com.jipasoft.repository.UserRepository;
  * @author Julius Krah
  *
  */
-public interface UserRepositoryImpl extends UserRepository, Repository<User, String> {
+public interface UserRepositoryImpl extends UserRepository, UserRepositoryCustom, Repository<User, String> {
+
+	public List<User> findAllByOrderByIdAsc(Pageable pageable);
+
+	public List<User> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public default List<User> findPage(String afterId, int limit) {
+		Pageable page = PageRequest.of(0, limit);
+		return afterId == null ? findAllByOrderByIdAsc(page) : findByIdGreaterThanOrderByIdAsc(afterId, page);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Authorities are embedded in the account document
+	 * </p>
+	 */
+	@Override
+	public Optional<User> findOneWithAuthoritiesByLogin(String login);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Query("{}")
+	public Stream<User> streamAll();
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Spring data MongoDb only reads the fields of {@link UserSummary}
+	 * </p>
+	 */
+	@Override
+	public Optional<UserSummary> findSummaryById(String id);
+
+	public List<UserSummary> findSummariesByOrderByIdAsc(Pageable pageable);
+
+	public List<UserSummary> findSummariesByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+	public Stream<UserSummary> findSummariesByOrderByIdAsc();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public default List<UserSummary> findSummaryPage(String afterId, int limit) {
+		Pageable page = PageRequest.of(0, limit);
+		return afterId == null ? findSummariesByOrderByIdAsc(page) : findSummariesByIdGreaterThanOrderByIdAsc(afterId, page);
+	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public default Stream<UserSummary> streamAllSummaries() {
+		return findSummariesByOrderByIdAsc();
+	}
 }
@@ -16,14 +16,22 @@
 package com.jipasoft.repository.postgres;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
 
 import com.jipasoft.repository.BaseRepository;
+import com.jipasoft.repository.DetachingStream;
+import com.jipasoft.repository.JpaBatches;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,8 +47,20 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class BaseRepositoryImpl<T, ID extends Serializable> implements BaseRepository<T, ID> {
+	/**
+	 * Number of rows the JDBC driver fetches per round trip when streaming
+	 */
+	protected static final int FETCH_SIZE = 500;
+
 	private Class<T> persistentClass;
 
+	/**
+	 * Number of statements sent per JDBC batch. The persistence context is
+	 * flushed and cleared after each batch
+	 */
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	protected int batchSize;
+
 	@PersistenceContext
 	protected EntityManager em;
 
@@ -52,12 +72,42 @@ public class BaseRepositoryImpl<T, ID extends Serializable> implements BaseRepos
 		this.persistentClass = persistentClass;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Persists an entity without identifier and merges one with an identifier,
+	 * which may be detached
+	 * </p>
+	 */
 	@Override
 	public void save(T entity) {
-		if (this.em.contains(entity))
-			this.em.merge(entity);
-		else
-			this.em.persist(entity);
+		JpaBatches.save(this.em, entity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The persistence context is flushed and cleared after every
+	 * {@code hibernate.jdbc.batch_size} entities, so entities loaded before
+	 * this call are detached when it returns
+	 * </p>
+	 */
+	@Override
+	public void saveAll(Collection<T> entities) {
+		int count = JpaBatches.saveAll(this.em, entities, batchSize);
+		log.debug("Saved {} {} entities in batches of {}", count, persistentClass.getSimpleName(), batchSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Merges the entity, which selects it first. Subclasses replace this with
+	 * a native statement
+	 * </p>
+	 */
+	@Override
+	public void upsert(T entity) {
+		this.em.merge(entity);
 	}
 
 	@Override
@@ -65,6 +115,19 @@ public class BaseRepositoryImpl<T, ID extends Serializable> implements BaseRepos
 		this.em.remove(this.em.contains(entity) ? entity : em.merge(entity));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A bulk {@code DELETE}; Hibernate clears the association tables of the
+	 * entity with it
+	 * </p>
+	 */
+	@Override
+	public int deleteById(ID id) {
+		String jpql = String.format("DELETE FROM %s e WHERE e.id = :id", persistentClass.getSimpleName());
+		return this.em.createQuery(jpql).setParameter("id", id).executeUpdate();
+	}
+
 	@Override
 	public void deleteAll() {
 		Query query = this.em.createQuery(String.format("DELETE FROM %s e", persistentClass.getSimpleName()));
@@ -72,6 +135,19 @@ public class BaseRepositoryImpl<T, ID extends Serializable> implements BaseRepos
 		query.executeUpdate();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * One bulk {@code DELETE} per batch of identifiers, see
+	 * {@link JpaBatches#deleteAllById}
+	 * </p>
+	 */
+	@Override
+	public void deleteAllById(Collection<ID> ids) {
+		int deleted = JpaBatches.deleteAllById(this.em, persistentClass.getSimpleName(), ids, batchSize);
+		log.debug("Deleted {} {} entities in batches of {}", deleted, persistentClass.getSimpleName(), batchSize);
+	}
+
 	@Override
 	public Optional<T> findOneById(ID id) {
 		return Optional.ofNullable(this.em.find(persistentClass, id));
@@ -85,4 +161,50 @@ public class BaseRepositoryImpl<T, ID extends Serializable> implements BaseRepos
 		return query.getResultList();
 	}
 
+	@Override
+	public List<T> findPage(ID afterId, int limit) {
+		String jpql = afterId == null ? String.format("SELECT e FROM %s e ORDER BY e.id", persistentClass.getSimpleName())
+				: String.format("SELECT e FROM %s e WHERE e.id > :afterId ORDER BY e.id", persistentClass.getSimpleName());
+		TypedQuery<T> query = this.em.createQuery(jpql, persistentClass).setMaxResults(limit);
+		if (afterId != null)
+			query.setParameter("afterId", afterId);
+		log.debug("Query executed: {}", jpql);
+		return query.getResultList();
+	}
+
+	@Override
+	public Stream<T> streamAll() {
+		String jpql = String.format("SELECT e FROM %s e", persistentClass.getSimpleName());
+		TypedQuery<T> query = this.em.createQuery(jpql, persistentClass);
+		log.debug("Query executed: {}", jpql);
+		return detaching(stream(query));
+	}
+
+	/**
+	 * Executes the query over a forward-only scrollable cursor
+	 * 
+	 * @param query
+	 *            the query to execute
+	 * @return Stream<R> stream backed by the {@code ScrollableResults}
+	 */
+	@SuppressWarnings("unchecked")
+	protected <R> Stream<R> stream(TypedQuery<R> query) {
+		query.setHint(QueryHints.FETCH_SIZE, FETCH_SIZE);
+		query.setHint(QueryHints.READ_ONLY, true);
+		return query.unwrap(org.hibernate.query.Query.class).stream();
+	}
+
+	/**
+	 * Detaches each entity from the persistence context once the consumer moves
+	 * on to the next one, so the persistence context does not grow with the
+	 * size of the result
+	 * 
+	 * @param results
+	 *            the stream to wrap
+	 * @return Stream<T> the wrapped stream
+	 */
+	protected Stream<T> detaching(Stream<T> results) {
+		return DetachingStream.of(this.em, results);
+	}
+
 }
@@ -15,38 +15,67 @@
 */
 package com.jipasoft.repository.postgres;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.springframework.stereotype.Repository;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 import com.jipasoft.repository.UserRepository;
+import com.jipasoft.repository.UserUpsert;
 
 /**
  * An implementation of {@link UserRepository} which uses {@link EntityManager}.
- * This is used for the {@code postgres} profile
+ * This is used for the {@code postgres} profile. Lookups are exact matches so
+ * they can use the indexes on {@code login}, {@code email} and
+ * {@code reset_key}
  * 
  * @author Julius Krah
  *
  */
 @Repository
 public class UserRepositoryImpl extends BaseRepositoryImpl<User, String> implements UserRepository {
+	//@formatter:off
+	private static final String SELECT_SUMMARY = "SELECT new com.jipasoft.domain.dto.UserSummary("
+			+ "u.id, u.login, u.firstName, u.lastName, u.email, u.activated, u.createdBy, u.createdDate) FROM User u";
+	//@formatter:on
 
 	public UserRepositoryImpl() {
 		super(User.class);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The authorities are not written
+	 * </p>
+	 * 
+	 * @see UserUpsert
+	 */
+	@Override
+	public void upsert(User user) {
+		UserUpsert.upsert(this.em, user);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public Optional<User> findOneByResetKey(String resetKey) {
-		Query query = this.em.createQuery("SELECT u FROM User u WHERE u.resetKey LIKE :resetKey");
+		TypedQuery<User> query = this.em.createQuery("SELECT u FROM User u WHERE u.resetKey = :resetKey", User.class);
 		query.setParameter("resetKey", resetKey);
-		return Optional.ofNullable((User) query.getSingleResult());
+		return query.getResultList().stream().findFirst();
 	}
 
 	/**
@@ -54,9 +83,9 @@ public class UserRepositoryImpl extends BaseRepositoryImpl<User, String> impleme
 	 */
 	@Override
 	public Optional<User> findOneByEmail(String email) {
-		Query query = this.em.createQuery("SELECT u FROM User u WHERE u.email LIKE :email");
+		TypedQuery<User> query = this.em.createQuery("SELECT u FROM User u WHERE u.email = :email", User.class);
 		query.setParameter("email", email);
-		return Optional.ofNullable((User) query.getSingleResult());
+		return query.getResultList().stream().findFirst();
 	}
 
 	/**
@@ -64,9 +93,98 @@ public class UserRepositoryImpl extends BaseRepositoryImpl<User, String> impleme
 	 */
 	@Override
 	public Optional<User> findOneByLogin(String login) {
-		Query query = this.em.createQuery("SELECT u FROM User u WHERE u.login LIKE :login");
+		TypedQuery<User> query = this.em.createQuery("SELECT u FROM User u WHERE u.login = :login", User.class);
+		query.setParameter("login", login);
+		return query.getResultList().stream().findFirst();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<User> findOneWithAuthoritiesByLogin(String login) {
+		TypedQuery<User> query = this.em.createQuery("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.authorities WHERE u.login = :login",
+				User.class);
 		query.setParameter("login", login);
-		return Optional.ofNullable((User) query.getSingleResult());
+		return query.getResultList().stream().findFirst();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Authorities are fetched in the same statement. The rows are ordered by
+	 * id so that the cursor can group the rows of each user
+	 * </p>
+	 */
+	@Override
+	public Stream<User> streamAll() {
+		TypedQuery<User> query = this.em.createQuery("SELECT u FROM User u LEFT JOIN FETCH u.authorities ORDER BY u.id", User.class);
+		return detaching(stream(query));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<UserSummary> findSummaryById(String id) {
+		TypedQuery<UserSummary> query = this.em.createQuery(SELECT_SUMMARY + " WHERE u.id = :id", UserSummary.class);
+		query.setParameter("id", id);
+		return query.getResultList().stream().findFirst();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<UserSummary> findSummaryPage(String afterId, int limit) {
+		String jpql = afterId == null ? SELECT_SUMMARY + " ORDER BY u.id" : SELECT_SUMMARY + " WHERE u.id > :afterId ORDER BY u.id";
+		TypedQuery<UserSummary> query = this.em.createQuery(jpql, UserSummary.class).setMaxResults(limit);
+		if (afterId != null)
+			query.setParameter("afterId", afterId);
+		return query.getResultList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Stream<UserSummary> streamAllSummaries() {
+		return stream(this.em.createQuery(SELECT_SUMMARY + " ORDER BY u.id", UserSummary.class));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The statement names only the changed columns
+	 * </p>
+	 */
+	@Override
+	public int update(UserUpdate update) {
+		if (update.isEmpty())
+			return 0;
+		String set = update.getChanges().keySet().stream().map(property -> String.format("u.%1$s = :%1$s", property))
+				.collect(Collectors.joining(", "));
+		Query query = this.em.createQuery("UPDATE User u SET " + set + " WHERE u.id = :id").setParameter("id", update.getId());
+		update.getChanges().forEach(query::setParameter);
+		return query.executeUpdate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The query does not flush the persistence context
+	 * </p>
+	 */
+	@Override
+	public List<String> findLoginsById(Collection<String> ids) {
+		List<String> remaining = new ArrayList<>(ids);
+		List<String> logins = new ArrayList<>(remaining.size());
+		for (int i = 0; i < remaining.size(); i += batchSize) {
+			List<String> batch = remaining.subList(i, Math.min(i + batchSize, remaining.size()));
+			logins.addAll(this.em.createQuery("SELECT u.login FROM User u WHERE u.id IN :ids", String.class).setParameter("ids", batch)
+					.setFlushMode(FlushModeType.COMMIT).getResultList());
+		}
+		return logins;
 	}
 
 }
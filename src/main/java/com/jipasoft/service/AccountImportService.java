@@ -0,0 +1,44 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.jipasoft.domain.dto.ImportReport;
+
+/**
+ * Contains service methods for importing User accounts in bulk
+ * 
+ * @author Julius Krah
+ *
+ */
+public interface AccountImportService {
+
+	/**
+	 * Imports the accounts of a semicolon separated file with the same layout
+	 * as {@code db/data/account.csv}. The file is read as a stream, passwords
+	 * are hashed in parallel and the accounts are written in batches
+	 * 
+	 * @param csv
+	 *            the account file
+	 * @return {@code ImportReport} the rows imported and rejected, and the time
+	 *         spent in each stage
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public ImportReport importAccounts(InputStream csv) throws IOException;
+}
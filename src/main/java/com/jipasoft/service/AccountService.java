@@ -15,10 +15,14 @@
 */
 package com.jipasoft.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 
 /**
  * Contains service methods for the management of User accounts
@@ -40,6 +44,23 @@ public interface AccountService {
 	 */
 	public void deleteAccount(User user);
 
+	/**
+	 * Deletes the account with the given id without loading it
+	 * 
+	 * @param id
+	 *            the id of the account to delete
+	 * @return the number of deleted accounts, 0 if none has the id
+	 */
+	public int deleteAccountById(String id);
+
+	/**
+	 * Deletes all accounts with the given ids in batches
+	 * 
+	 * @param ids
+	 *            the ids of the accounts to delete
+	 */
+	public void deleteAccounts(Collection<String> ids);
+
 	/**
 	 * This method gets all the users from sql database
 	 * 
@@ -47,6 +68,60 @@ public interface AccountService {
 	 */
 	public List<User> findAll();
 
+	/**
+	 * This method gets one page of users ordered by their identifier
+	 * 
+	 * @param afterId
+	 *            the id of the last user of the previous page or {@code null}
+	 *            for the first page
+	 * @param size
+	 *            the maximum number of users to return
+	 * @return List<User> the users following {@code afterId}
+	 */
+	public List<User> findPage(String afterId, int size);
+
+	/**
+	 * Passes every user in the database to {@code action} one at a time,
+	 * reading them over a cursor so memory use does not depend on the number of
+	 * accounts
+	 * 
+	 * @param action
+	 *            the action to perform on each user
+	 */
+	public void forEachAccount(Consumer<? super User> action);
+
+	/**
+	 * This method gets one page of user summaries ordered by their identifier
+	 * 
+	 * @param afterId
+	 *            the id of the last user of the previous page or {@code null}
+	 *            for the first page
+	 * @param size
+	 *            the maximum number of users to return
+	 * @return List<UserSummary> the read models of the users following
+	 *         {@code afterId}
+	 */
+	public List<UserSummary> findSummaryPage(String afterId, int size);
+
+	/**
+	 * Passes the summary of every user in the database to {@code action} one
+	 * at a time, reading them over a cursor
+	 * 
+	 * @param action
+	 *            the action to perform on each summary
+	 */
+	public void forEachSummary(Consumer<? super UserSummary> action);
+
+	/**
+	 * This brings the read model of one unique user from the database
+	 * 
+	 * @param id
+	 *            the user identfier
+	 * @return {@code Optional<UserSummary>} the optional summary. This is never
+	 *         null
+	 */
+	public Optional<UserSummary> findSummaryById(String id);
+
 	/**
 	 * This brings one unique user from the database
 	 * 
@@ -94,4 +169,31 @@ public interface AccountService {
 	 *            the Account to be created or updated
 	 */
 	public void save(User user);
+
+	/**
+	 * Facade method to create or update many accounts in batches
+	 * 
+	 * @param users
+	 *            the Accounts to be created or updated
+	 */
+	public void saveAll(Collection<User> users);
+
+	/**
+	 * Facade method to create an account or replace the one with its id in a
+	 * single statement. The authorities and the creation audit fields of an
+	 * existing account are kept
+	 * 
+	 * @param user
+	 *            the Account to be created or replaced
+	 */
+	public void upsert(User user);
+
+	/**
+	 * Facade method to change some fields of an account without loading it
+	 * 
+	 * @param update
+	 *            the id of the Account and the fields to change
+	 * @return the number of updated Accounts, 0 if none has the id
+	 */
+	public int update(UserUpdate update);
 }
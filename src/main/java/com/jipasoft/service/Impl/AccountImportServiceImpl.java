@@ -0,0 +1,293 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service.Impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.jipasoft.config.security.UpgradingPasswordEncoder;
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.ImportReport;
+import com.jipasoft.service.AccountImportService;
+import com.jipasoft.service.AccountService;
+import com.jipasoft.service.KnownAccountsService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * AccountImportService implementation. The import is a three stage pipeline:
+ * <ol>
+ * <li>the calling thread reads the file a chunk of rows at a time</li>
+ * <li>the rows of a chunk are hashed and validated on the
+ * {@code importHashExecutor} pool, sized to the available processors</li>
+ * <li>the calling thread writes the previous chunk through
+ * {@link AccountService#saveAll}</li>
+ * </ol>
+ * At most two chunks are in flight, so reading waits for the datastore when it
+ * falls behind and memory use does not depend on the size of the file.
+ * <p>
+ * Rows whose login or email repeats an earlier row of the chunk or an existing
+ * account are rejected before the chunk is written. Should the batch still
+ * break a unique constraint, say an account created meanwhile, the chunk is
+ * saved one row at a time and only the offending rows are rejected
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@Service
+public class AccountImportServiceImpl implements AccountImportService {
+	private static final int CHUNK_SIZE = 1000;
+	private static final String SEPARATOR = ";";
+	@Inject
+	private AccountService accountService;
+	@Inject
+	private PasswordEncoder encoder;
+	@Inject
+	private Validator validator;
+	@Inject
+	private KnownAccountsService knownAccounts;
+	@Inject
+	private ThreadPoolTaskExecutor importHashExecutor;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ImportReport importAccounts(InputStream csv) throws IOException {
+		ImportReport report = new ImportReport();
+		AtomicLong hashNanos = new AtomicLong();
+		long parseNanos = 0;
+		long writeNanos = 0;
+		long start = System.nanoTime();
+
+		LineNumberReader reader = new LineNumberReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+		String header = reader.readLine();
+		if (header == null)
+			return report;
+		Map<String, Integer> columns = columns(header);
+
+		List<CompletableFuture<Row>> previous = Collections.emptyList();
+		List<CompletableFuture<Row>> current = Collections.emptyList();
+		try {
+			boolean more = true;
+			while (more) {
+				long parseStart = System.nanoTime();
+				current = new ArrayList<>(CHUNK_SIZE);
+				String line;
+				while (current.size() < CHUNK_SIZE && (line = reader.readLine()) != null) {
+					if (line.trim().isEmpty())
+						continue;
+					report.setRead(report.getRead() + 1);
+					long lineNumber = reader.getLineNumber();
+					String[] values = line.split(SEPARATOR, -1);
+					current.add(CompletableFuture.supplyAsync(() -> parse(lineNumber, values, columns, hashNanos),
+							importHashExecutor));
+				}
+				more = current.size() == CHUNK_SIZE;
+				parseNanos += System.nanoTime() - parseStart;
+				writeNanos += write(previous, report);
+				previous = current;
+			}
+			writeNanos += write(previous, report);
+		} catch (IOException | RuntimeException | Error e) {
+			// the import is over, rows not hashed yet are not worth the CPU
+			cancel(previous);
+			cancel(current);
+			throw e;
+		}
+
+		report.setParseMillis(TimeUnit.NANOSECONDS.toMillis(parseNanos));
+		report.setHashMillis(TimeUnit.NANOSECONDS.toMillis(hashNanos.get() / importHashExecutor.getMaxPoolSize()));
+		report.setWriteMillis(TimeUnit.NANOSECONDS.toMillis(writeNanos));
+		report.setTotalMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		log.info("Imported {} accounts ({} rejected) in {} ms: {} rows/s", report.getImported(), report.getRejected(),
+				report.getTotalMillis(), report.getRowsPerSecond());
+		return report;
+	}
+
+	private void cancel(List<CompletableFuture<Row>> chunk) {
+		chunk.forEach(future -> future.cancel(false));
+	}
+
+	private Map<String, Integer> columns(String header) {
+		String[] names = header.split(SEPARATOR, -1);
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < names.length; i++)
+			columns.put(names[i].trim().toLowerCase(), i);
+		return columns;
+	}
+
+	private String value(String[] values, Map<String, Integer> columns, String column) {
+		Integer index = columns.get(column);
+		if (index == null || values[index].trim().isEmpty())
+			return null;
+		return values[index].trim();
+	}
+
+	/**
+	 * Runs on the hashing pool. Turns one row into a {@link User}, hashing its
+	 * password unless it is already a bcrypt hash
+	 */
+	private Row parse(long line, String[] values, Map<String, Integer> columns, AtomicLong hashNanos) {
+		if (values.length != columns.size())
+			return Row.rejected(line, String.format("expected %d columns but found %d", columns.size(), values.length));
+		String password = value(values, columns, "password_hash");
+		if (password == null)
+			return Row.rejected(line, "password_hash may not be empty");
+
+		User user = new User();
+		user.setLogin(value(values, columns, "login"));
+		user.setFirstName(value(values, columns, "first_name"));
+		user.setLastName(value(values, columns, "last_name"));
+		user.setEmail(value(values, columns, "email"));
+		user.setActivated(Boolean.parseBoolean(value(values, columns, "activated")));
+		String createdBy = value(values, columns, "created_by");
+		user.setCreatedBy(createdBy == null ? "system" : createdBy);
+		Set<Authority> authorities = new HashSet<>();
+		authorities.add(new Authority("ROLE_USER"));
+		user.setAuthorities(authorities);
+
+		if (UpgradingPasswordEncoder.strength(password) >= 0)
+			user.setPassword(password);
+		else {
+			long hashStart = System.nanoTime();
+			user.setPassword(encoder.encode(password));
+			hashNanos.addAndGet(System.nanoTime() - hashStart);
+		}
+
+		Set<ConstraintViolation<User>> violations = validator.validate(user);
+		if (!violations.isEmpty())
+			return Row.rejected(line, violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage())
+					.collect(Collectors.joining(", ")));
+		return new Row(line, user, null);
+	}
+
+	/**
+	 * Waits for the rows of a chunk and writes the valid ones in one batch
+	 * 
+	 * @return the time spent writing in nanoseconds
+	 */
+	private long write(List<CompletableFuture<Row>> chunk, ImportReport report) {
+		if (chunk.isEmpty())
+			return 0;
+		List<Row> rows = new ArrayList<>(chunk.size());
+		Set<String> logins = new HashSet<>();
+		Set<String> emails = new HashSet<>();
+		for (CompletableFuture<Row> future : chunk) {
+			Row row = future.join();
+			String error = row.user == null ? row.error : duplicate(row.user, logins, emails);
+			if (error == null)
+				rows.add(row);
+			else
+				report.reject(row.line, error);
+		}
+		long start = System.nanoTime();
+		if (!rows.isEmpty()) {
+			try {
+				accountService.saveAll(rows.stream().map(row -> row.user).collect(Collectors.toList()));
+				report.setImported(report.getImported() + rows.size());
+			} catch (DataIntegrityViolationException e) {
+				log.warn("Saving {} accounts in one batch failed, saving them one at a time: {}", rows.size(),
+						e.getMessage());
+				saveEach(rows, report);
+			}
+		}
+		log.info("Import progress: {} accounts read, {} imported, {} rejected", report.getRead(), report.getImported(),
+				report.getRejected());
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * @return why the login or email of {@code user} is already taken, by an
+	 *         earlier row of the chunk or by an existing account, or
+	 *         {@code null} when both are free
+	 */
+	private String duplicate(User user, Set<String> logins, Set<String> emails) {
+		String login = user.getLogin().toLowerCase(Locale.ROOT);
+		if (logins.contains(login)
+				|| knownAccounts.findByLogin(user.getLogin(), accountService::findAccountByLogin).isPresent())
+			return "login " + user.getLogin() + " is already in use";
+		String email = user.getEmail().toLowerCase(Locale.ROOT);
+		if (emails.contains(email)
+				|| knownAccounts.findByEmail(user.getEmail(), accountService::findAccountByEmail).isPresent())
+			return "email " + user.getEmail() + " is already in use";
+		logins.add(login);
+		emails.add(email);
+		return null;
+	}
+
+	/**
+	 * Saves the rows of a chunk whose batch failed one by one, rejecting those
+	 * that still break a unique constraint
+	 */
+	private void saveEach(List<Row> rows, ImportReport report) {
+		for (Row row : rows) {
+			User user = row.user;
+			// the failed batch may have assigned ids that were rolled back
+			if (user.getId() != null && !accountService.findAccountById(user.getId()).isPresent())
+				user.setId(null);
+			try {
+				accountService.save(user);
+				report.setImported(report.getImported() + 1);
+			} catch (DataIntegrityViolationException e) {
+				report.reject(row.line, "login or email is already in use");
+			}
+		}
+	}
+
+	private static class Row {
+		private final long line;
+		private final User user;
+		private final String error;
+
+		Row(long line, User user, String error) {
+			this.line = line;
+			this.user = user;
+			this.error = error;
+		}
+
+		static Row rejected(long line, String error) {
+			return new Row(line, null, error);
+		}
+	}
+}
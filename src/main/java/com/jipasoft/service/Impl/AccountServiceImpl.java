@@ -15,23 +15,51 @@
 */
 package com.jipasoft.service.Impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 import com.jipasoft.repository.UserRepository;
 import com.jipasoft.service.AccountService;
+import com.jipasoft.service.KnownAccountsService;
+import com.jipasoft.util.SingleFlight;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * AccountService implementation. Provides implementation of the Account Facade
+ * AccountService implementation. Provides implementation of the Account Facade.
+ * Write methods evict the logins they touch, before and after the change, from
+ * the {@value UserDetailsServiceImpl#USERS_CACHE} cache once the transaction
+ * has committed, so a concurrent login cannot cache the row being replaced.
+ * Saves record the accounts in the {@link KnownAccountsService}. Concurrent lookups of the same summary outside
+ * a transaction share one datastore call (see {@link SingleFlight})
  * 
  * @author Julius Krah
  *
@@ -42,11 +70,31 @@ import lombok.extern.slf4j.Slf4j;
 public class AccountServiceImpl implements AccountService {
 	@Inject
 	private Provider<UserRepository> userRepository;
+	@Inject
+	private Provider<KnownAccountsService> knownAccounts;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Inject
+	private MeterRegistry registry;
+	@Inject
+	private CacheManager cacheManager;
+	@Value("${single-flight.timeout-millis:2000}")
+	private long singleFlightTimeout;
+	private TransactionTemplate readOnlyTransaction;
+	private SingleFlight<String, Optional<UserSummary>> summaries;
+
+	@PostConstruct
+	public void init() {
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+		summaries = new SingleFlight<>("summary-by-id", singleFlightTimeout, registry);
+	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
+	@CacheEvict(cacheNames = UserDetailsServiceImpl.USERS_CACHE, allEntries = true)
 	public void deleteAllAccounts() {
 		log.info("Deleting all account information from database..");
 		userRepository.get().deleteAll();
@@ -58,7 +106,54 @@ public class AccountServiceImpl implements AccountService {
 	@Override
 	public void save(User user) {
 		log.info("Saving user: {} into the database...", user);
+		List<String> logins = logins(user);
+		knownAccounts.get().add(user);
 		userRepository.get().save(user);
+		evictAfterCommit(logins);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void saveAll(Collection<User> users) {
+		log.info("Saving {} users into the database...", users.size());
+		List<String> logins = new ArrayList<>(
+				storedLogins(users.stream().map(User::getId).filter(Objects::nonNull).collect(Collectors.toList())));
+		users.forEach(user -> logins.add(user.getLogin()));
+		KnownAccountsService knownAccounts = this.knownAccounts.get();
+		users.forEach(knownAccounts::add);
+		userRepository.get().saveAll(users);
+		evictAfterCommit(logins);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void upsert(User user) {
+		log.info("Upserting user: {} into the database...", user);
+		List<String> logins = logins(user);
+		knownAccounts.get().add(user);
+		userRepository.get().upsert(user);
+		evictAfterCommit(logins);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int update(UserUpdate update) {
+		log.info("Updating user: {} in the database...", update);
+		User keys = new User();
+		update.applyTo(keys);
+		knownAccounts.get().add(keys);
+		// the stored login, and the new one when the account is renamed
+		List<String> logins = new ArrayList<>(storedLogins(Collections.singletonList(update.getId())));
+		logins.add(keys.getLogin());
+		int updated = userRepository.get().update(update);
+		evictAfterCommit(logins);
+		return updated;
 	}
 
 	/**
@@ -71,10 +166,93 @@ public class AccountServiceImpl implements AccountService {
 		return userRepository.get().findAll();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<User> findPage(String afterId, int size) {
+		log.debug("Retrieving {} users after id {} from the database...", size, afterId);
+		return userRepository.get().findPage(afterId, size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void forEachAccount(Consumer<? super User> action) {
+		log.debug("Streaming all user information from the database...");
+		try (Stream<User> users = userRepository.get().streamAll()) {
+			users.forEach(action);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<UserSummary> findSummaryPage(String afterId, int size) {
+		log.debug("Retrieving {} user summaries after id {} from the database...", size, afterId);
+		return userRepository.get().findSummaryPage(afterId, size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void forEachSummary(Consumer<? super UserSummary> action) {
+		log.debug("Streaming all user summaries from the database...");
+		try (Stream<UserSummary> summaries = userRepository.get().streamAllSummaries()) {
+			summaries.forEach(action);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public Optional<UserSummary> findSummaryById(String id) {
+		log.debug("Retrieving summary of user with id {} from the database...", id);
+		// a caller's transaction may see its own writes, it cannot share
+		if (TransactionSynchronizationManager.isActualTransactionActive())
+			return userRepository.get().findSummaryById(id);
+		// the transaction (and its connection) is only opened by the caller
+		// running the lookup, the others wait without one
+		return summaries.execute(id, () -> readOnlyTransaction.execute(status -> userRepository.get().findSummaryById(id)));
+	}
+
 	@Override
 	public void deleteAccount(User user) {
 		log.info("Deleting user: {} from the database...", user);
 		userRepository.get().delete(user);
+		evictAfterCommit(Collections.singletonList(user.getLogin()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int deleteAccountById(String id) {
+		log.info("Deleting user with id {} from the database...", id);
+		List<String> logins = storedLogins(Collections.singletonList(id));
+		int deleted = userRepository.get().deleteById(id);
+		evictAfterCommit(logins);
+		return deleted;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deleteAccounts(Collection<String> ids) {
+		log.info("Deleting {} users from the database...", ids.size());
+		List<String> logins = storedLogins(ids);
+		userRepository.get().deleteAllById(ids);
+		evictAfterCommit(logins);
 	}
 
 	@Override
@@ -105,4 +283,41 @@ public class AccountServiceImpl implements AccountService {
 		return userRepository.get().findOneByLogin(login);
 	}
 
+	/**
+	 * The login of {@code user} and, for an existing account that may be
+	 * renamed, its stored login
+	 */
+	private List<String> logins(User user) {
+		List<String> logins = new ArrayList<>(
+				storedLogins(user.getId() == null ? Collections.emptyList() : Collections.singletonList(user.getId())));
+		logins.add(user.getLogin());
+		return logins;
+	}
+
+	private List<String> storedLogins(Collection<String> ids) {
+		return ids.isEmpty() ? Collections.emptyList() : userRepository.get().findLoginsById(ids);
+	}
+
+	/**
+	 * Evicts {@code logins} from the {@value UserDetailsServiceImpl#USERS_CACHE}
+	 * cache after the current transaction commits, or right away outside of
+	 * one. A rolled back change leaves the cache as it is
+	 */
+	private void evictAfterCommit(Collection<String> logins) {
+		Set<String> keys = logins.stream().filter(Objects::nonNull).map(String::toLowerCase).collect(Collectors.toSet());
+		if (keys.isEmpty())
+			return;
+		Cache cache = cacheManager.getCache(UserDetailsServiceImpl.USERS_CACHE);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			keys.forEach(cache::evict);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				keys.forEach(cache::evict);
+			}
+		});
+	}
+
 }
@@ -0,0 +1,202 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service.Impl;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.service.AccountService;
+import com.jipasoft.service.KnownAccountsService;
+import com.jipasoft.util.BloomFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * KnownAccountsService implementation over a {@link BloomFilter} of the lower
+ * case logins and emails. The filter is built once the application is ready
+ * (after the dataset loader ran) from a streamed scan of the account
+ * summaries, then rebuilt every {@code known-accounts.rebuild-interval}
+ * milliseconds. Until it is built every lookup goes to the datastore.
+ * <p>
+ * Accounts are added before they are written and again once the transaction
+ * committed, so an account written during a rebuild is never missing from the
+ * new filter. Deleted or renamed accounts stay in the filter until the next
+ * rebuild, as false positives.
+ * </p>
+ * <p>
+ * The scan runs in a read-write transaction, so it reads the primary rather
+ * than a lagging replica. Accounts created by other instances are only added
+ * by the next rebuild, the filter may miss them until then: it is only used
+ * where a miss is caught later, such as the signup pre-check, which the
+ * unique constraints back. Logins always go to the datastore.
+ * </p>
+ * <p>
+ * The {@code accounts.filter} counter is tagged with the {@code key}
+ * ({@code login} or {@code email}) and the {@code result}: {@code negative}
+ * (answered by the filter), {@code positive} or {@code false_positive}. The
+ * {@code accounts.filter.fpp} gauge is the false positive rate expected at the
+ * current fill of the filter
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@Service
+public class KnownAccountsServiceImpl implements KnownAccountsService {
+	private static final String LOGIN = "login:";
+	private static final String EMAIL = "email:";
+	@Inject
+	private Provider<AccountService> accountServiceProvider;
+	@Inject
+	private MeterRegistry registry;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Value("${known-accounts.expected-accounts:1000000}")
+	private long expectedAccounts;
+	@Value("${known-accounts.false-positive-rate:0.01}")
+	private double falsePositiveRate;
+	private final Object lock = new Object();
+	private volatile BloomFilter filter;
+	private BloomFilter building;
+
+	@PostConstruct
+	public void init() {
+		registry.gauge("accounts.filter.fpp", this, service -> {
+			BloomFilter current = service.filter;
+			return current == null ? Double.NaN : current.expectedFalsePositiveRate();
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> Optional<T> findByLogin(String login, Function<String, Optional<T>> finder) {
+		return find("login", LOGIN, login, finder);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> Optional<T> findByEmail(String email, Function<String, Optional<T>> finder) {
+		return find("email", EMAIL, email, finder);
+	}
+
+	private <T> Optional<T> find(String key, String prefix, String value, Function<String, Optional<T>> finder) {
+		BloomFilter current = filter;
+		if (current == null)
+			return finder.apply(value);
+		if (!current.mightContain(prefix + value.toLowerCase(Locale.ROOT))) {
+			counter(key, "negative").increment();
+			return Optional.empty();
+		}
+		Optional<T> result = finder.apply(value);
+		counter(key, result.isPresent() ? "positive" : "false_positive").increment();
+		return result;
+	}
+
+	private Counter counter(String key, String result) {
+		return registry.counter("accounts.filter", "key", key, "result", result);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void add(User user) {
+		put(user.getLogin(), user.getEmail());
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			String login = user.getLogin();
+			String email = user.getEmail();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					// a rebuild may have started scanning before the commit
+					put(login, email);
+				}
+			});
+		}
+	}
+
+	private void put(String login, String email) {
+		synchronized (lock) {
+			put(filter, login, email);
+			put(building, login, email);
+		}
+	}
+
+	private static void put(BloomFilter filter, String login, String email) {
+		if (filter == null)
+			return;
+		if (login != null)
+			filter.put(LOGIN + login.toLowerCase(Locale.ROOT));
+		if (email != null)
+			filter.put(EMAIL + email.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(initialDelayString = "${known-accounts.rebuild-interval:21600000}", fixedDelayString = "${known-accounts.rebuild-interval:21600000}")
+	public synchronized void rebuild() {
+		long start = System.nanoTime();
+		// logins and emails
+		BloomFilter next = new BloomFilter(2 * expectedAccounts, falsePositiveRate);
+		synchronized (lock) {
+			building = next;
+		}
+		try {
+			// read-only transactions may be routed to a replica that has not
+			// caught up with the latest signups yet
+			new TransactionTemplate(transactionManager).execute(status -> {
+				accountServiceProvider.get().forEachSummary(summary -> put(next, summary.getLogin(), summary.getEmail()));
+				return null;
+			});
+			synchronized (lock) {
+				filter = next;
+			}
+			log.info("Built the known accounts filter in {} ms, expected false positive rate {}",
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), next.expectedFalsePositiveRate());
+		} finally {
+			synchronized (lock) {
+				building = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service.Impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.jipasoft.exception.HashingRejectedException;
+import com.jipasoft.service.PasswordHashingService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PasswordHashingService implementation. The pool has
+ * {@code hashing.threads} threads (half the processors by default) and queues
+ * at most {@code hashing.queue-capacity} passwords; beyond that the request is
+ * rejected with a {@link HashingRejectedException}.
+ * <p>
+ * The {@code password.hashing} timer measures the latency seen by the callers,
+ * queueing included. The pool is bound as the {@code password-hash} executor,
+ * so its queue depth is the {@code executor.queued} gauge
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@Service
+public class PasswordHashingServiceImpl implements PasswordHashingService {
+	private static final String POOL_NAME = "password-hash";
+	private final PasswordEncoder encoder;
+	private final ExecutorService hashingPool;
+	private final Timer latency;
+	private final Counter rejected;
+
+	@Inject
+	public PasswordHashingServiceImpl(PasswordEncoder encoder, MeterRegistry registry, @Value("${hashing.threads:0}") int threads,
+			@Value("${hashing.queue-capacity:100}") int queueCapacity) {
+		int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		log.debug("Hashing passwords on {} threads, queueing at most {}", poolSize, queueCapacity);
+		this.encoder = encoder;
+		this.hashingPool = ExecutorServiceMetrics.monitor(registry, new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory(POOL_NAME + "-")), POOL_NAME);
+		this.latency = registry.timer("password.hashing");
+		this.rejected = registry.counter("executor.rejected", "name", POOL_NAME);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		hashingPool.shutdownNow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String hash(CharSequence rawPassword) {
+		try {
+			return hashAsync(rawPassword).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletableFuture<String> hashAsync(CharSequence rawPassword) {
+		long start = System.nanoTime();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				String hash = encoder.encode(rawPassword);
+				latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				return hash;
+			}, hashingPool);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new HashingRejectedException("The password hashing queue is full", e);
+		}
+	}
+}
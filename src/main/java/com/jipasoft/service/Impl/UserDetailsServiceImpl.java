@@ -1,47 +1,115 @@
 package com.jipasoft.service.Impl;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.jipasoft.domain.User;
 import com.jipasoft.exception.AccountNotActivatedException;
 import com.jipasoft.repository.UserRepository;
+import com.jipasoft.util.SingleFlight;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Resolves accounts for form login. Resolved accounts are kept in the
+ * {@value #USERS_CACHE} cache keyed by lower case login, so repeated logins do
+ * not go to the datastore. Concurrent cache misses of the same login share one
+ * lookup. {@link AccountServiceImpl} evicts the entries of
+ * accounts it changes
+ * 
+ * @author Julius Krah
+ *
+ */
 @Slf4j
 @Service
-@Transactional(readOnly = true)
 public class UserDetailsServiceImpl implements UserDetailsService {
+	public static final String USERS_CACHE = "users";
 	@Inject
 	private Provider<UserRepository> userRepositoryProvider;
+	@Inject
+	private CacheManager cacheManager;
+	@Inject
+	private PlatformTransactionManager transactionManager;
+	@Inject
+	private MeterRegistry registry;
+	@Value("${single-flight.timeout-millis:2000}")
+	private long singleFlightTimeout;
+	private TransactionTemplate readOnlyTransaction;
+	private SingleFlight<String, Optional<CachedUser>> logins;
+
+	@PostConstruct
+	public void init() {
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+		logins = new SingleFlight<>("user-by-login", singleFlightTimeout, registry);
+	}
 
 	@Override
 	public UserDetails loadUserByUsername(final String login) throws UsernameNotFoundException, AccountNotActivatedException {
 		log.debug("Authenticating {}", login);
 		String lowercaseLogin = login.toLowerCase();
-		Optional<User> userFromDatabase = userRepositoryProvider.get().findOneByLogin(lowercaseLogin);
-
-		return userFromDatabase.map(user -> {
-			if (!user.isActivated()) {
-				throw new AccountNotActivatedException(String.format("User %s is not activated", lowercaseLogin));
-			}
-			List<GrantedAuthority> grantedAuthorities = user.getAuthorities().stream()
-					.map(authority -> new SimpleGrantedAuthority(authority.getName())).collect(Collectors.toList());
-			return new org.springframework.security.core.userdetails.User(user.getLogin(), user.getPassword(), grantedAuthorities);
-		}).orElseThrow(() -> new UsernameNotFoundException(String.format("User %s was not found in the database", lowercaseLogin)));
+		Cache cache = cacheManager.getCache(USERS_CACHE);
+		CachedUser user = cache.get(lowercaseLogin, CachedUser.class);
+
+		if (user == null) {
+			// only a cache miss needs a transaction (and a connection). Not
+			// answered by the KnownAccountsService, which may miss accounts
+			// created on other instances
+			user = logins
+					.execute(lowercaseLogin, () -> readOnlyTransaction.execute(
+							status -> userRepositoryProvider.get().findOneWithAuthoritiesByLogin(lowercaseLogin).map(CachedUser::new)))
+					.orElseThrow(() -> new UsernameNotFoundException(String.format("User %s was not found in the database", lowercaseLogin)));
+			cache.put(lowercaseLogin, user);
+		}
+		if (!user.activated) {
+			throw new AccountNotActivatedException(String.format("User %s is not activated", lowercaseLogin));
+		}
+		return user.toUserDetails();
+	}
+
+	/**
+	 * Immutable copy of the account fields needed to authenticate. The
+	 * {@code UserDetails} handed to spring security have their credentials
+	 * erased after authentication, so a fresh instance is built on every call
+	 */
+	private static final class CachedUser implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String login;
+		private final String password;
+		private final boolean activated;
+		private final List<String> authorities;
+
+		CachedUser(User user) {
+			this.login = user.getLogin();
+			this.password = user.getPassword();
+			this.activated = user.isActivated();
+			this.authorities = user.getAuthorities().stream().map(authority -> authority.getName()).collect(Collectors.toList());
+		}
+
+		UserDetails toUserDetails() {
+			List<GrantedAuthority> grantedAuthorities = authorities.stream().map(SimpleGrantedAuthority::new)
+					.collect(Collectors.toList());
+			return new org.springframework.security.core.userdetails.User(login, password, grantedAuthorities);
+		}
 	}
 
 }
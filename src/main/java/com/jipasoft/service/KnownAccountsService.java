@@ -0,0 +1,72 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.jipasoft.domain.User;
+
+/**
+ * Probabilistic membership of the logins and emails in use. Lookups of a login
+ * or email that no account has are answered without going to the datastore;
+ * the others go to the datastore as usual. Accounts written by other instances
+ * are only known after the next {@link #rebuild()}, so a negative answer is
+ * advisory and must be backed by the datastore constraints
+ * 
+ * @author Julius Krah
+ *
+ */
+public interface KnownAccountsService {
+	/**
+	 * Looks an account up by login, unless no account has {@code login}
+	 * 
+	 * @param login
+	 *            the login to look for
+	 * @param finder
+	 *            the datastore lookup
+	 * @return {@code Optional<T>} the result of {@code finder} or empty when it
+	 *         was not needed
+	 */
+	public <T> Optional<T> findByLogin(String login, Function<String, Optional<T>> finder);
+
+	/**
+	 * Looks an account up by email, unless no account has {@code email}
+	 * 
+	 * @param email
+	 *            the email to look for
+	 * @param finder
+	 *            the datastore lookup
+	 * @return {@code Optional<T>} the result of {@code finder} or empty when it
+	 *         was not needed
+	 */
+	public <T> Optional<T> findByEmail(String email, Function<String, Optional<T>> finder);
+
+	/**
+	 * Records the login and email of an account about to be saved. Must be
+	 * called before the account is written
+	 * 
+	 * @param user
+	 *            the account being saved
+	 */
+	public void add(User user);
+
+	/**
+	 * Rebuilds the membership from a scan of all the accounts, dropping the
+	 * logins and emails no longer in use
+	 */
+	public void rebuild();
+}
@@ -0,0 +1,51 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.jipasoft.exception.HashingRejectedException;
+
+/**
+ * Hashes passwords on a dedicated, bounded pool, so bursts of signups queue up
+ * there instead of holding every request thread in BCrypt
+ * 
+ * @author Julius Krah
+ *
+ */
+public interface PasswordHashingService {
+	/**
+	 * Hashes {@code rawPassword} on the hashing pool and waits for the result
+	 * 
+	 * @param rawPassword
+	 *            the password to hash
+	 * @return String the encoded password
+	 * @throws HashingRejectedException
+	 *             when the queue of the hashing pool is full
+	 */
+	public String hash(CharSequence rawPassword);
+
+	/**
+	 * Hashes {@code rawPassword} on the hashing pool
+	 * 
+	 * @param rawPassword
+	 *            the password to hash
+	 * @return {@code CompletableFuture<String>} the encoded password
+	 * @throws HashingRejectedException
+	 *             when the queue of the hashing pool is full
+	 */
+	public CompletableFuture<String> hashAsync(CharSequence rawPassword);
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+import com.jipasoft.service.AccountService;
+import com.jipasoft.util.UserGenerator;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads a generated dataset on startup. Ranges of users are generated and
+ * written in parallel, each range in its own transaction.
+ * <p>
+ * With a {@link JdbcTemplate} the rows are written with JDBC batches straight
+ * into the {@code account} and {@code user_role} tables, skipping the
+ * persistence context. Otherwise the users go through
+ * {@link AccountService#saveAll}, which is a bulk insert for the
+ * {@code mongo} profile.
+ * </p>
+ * <p>
+ * A range whose last user is already in the datastore is skipped, so
+ * restarting with the same dataset settings only loads the ranges a previous
+ * run did not commit.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DatasetLoader implements ApplicationRunner {
+	//@formatter:off
+	private static final String INSERT_ACCOUNT = "INSERT INTO account (id, login, password_hash, first_name, last_name, email, activated, created_by, created_date) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	//@formatter:on
+	private static final String INSERT_USER_ROLE = "INSERT INTO user_role (account_id, role_name) VALUES (?, ?)";
+
+	private final UserGenerator generator;
+	private final AccountService accountService;
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final ThreadPoolTaskExecutor executor;
+	private final long users;
+	private final int batchSize;
+
+	@Override
+	public void run(ApplicationArguments args) throws InterruptedException, ExecutionException {
+		log.info("Loading {} generated users with {} threads...", users, executor.getMaxPoolSize());
+		AtomicLong loaded = new AtomicLong();
+		AtomicLong skipped = new AtomicLong();
+		long start = System.nanoTime();
+		List<Future<?>> ranges = new ArrayList<>();
+		try {
+			for (long from = 0; from < users; from += batchSize) {
+				long first = from;
+				long last = Math.min(users, from + batchSize);
+				ranges.add(executor.submit(() -> {
+					List<User> range = generator.generate(first, last);
+					if (loaded(range)) {
+						skipped.addAndGet(range.size());
+						return;
+					}
+					transactionTemplate.execute(status -> {
+						write(range);
+						return null;
+					});
+					long done = loaded.addAndGet(range.size());
+					if (done / batchSize % 20 == 0)
+						log.info("Loaded {} of {} users", done, users);
+				}));
+			}
+			for (Future<?> range : ranges)
+				range.get();
+		} catch (InterruptedException | ExecutionException | RuntimeException e) {
+			// the pool outlives the load, drop the ranges not started yet
+			ranges.forEach(range -> range.cancel(true));
+			throw e;
+		}
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		log.info("Loaded {} users in {} ms ({} users/s), {} already present", loaded.get(), millis,
+				loaded.get() * 1000 / millis, skipped.get());
+	}
+
+	/**
+	 * A range is written in one transaction, it is present as a whole when its
+	 * last user is
+	 */
+	private boolean loaded(List<User> range) {
+		return accountService.findAccountByLogin(range.get(range.size() - 1).getLogin()).isPresent();
+	}
+
+	private void write(List<User> range) {
+		if (jdbcTemplate == null) {
+			accountService.saveAll(range);
+			return;
+		}
+		List<Object[]> roles = new ArrayList<>(range.size());
+		for (User user : range) {
+			user.setId(UUID.randomUUID().toString());
+			for (Authority authority : user.getAuthorities())
+				roles.add(new Object[] { user.getId(), authority.getName() });
+		}
+		jdbcTemplate.batchUpdate(INSERT_ACCOUNT, range, range.size(), (ps, user) -> {
+			ps.setString(1, user.getId());
+			ps.setString(2, user.getLogin());
+			ps.setString(3, user.getPassword());
+			ps.setString(4, user.getFirstName());
+			ps.setString(5, user.getLastName());
+			ps.setString(6, user.getEmail());
+			ps.setBoolean(7, user.isActivated());
+			ps.setString(8, user.getCreatedBy());
+			ps.setTimestamp(9, Timestamp.from(user.getCreatedDate().toInstant()));
+		});
+		jdbcTemplate.batchUpdate(INSERT_USER_ROLE, roles);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.util.ClassUtils;
+
+import com.jipasoft.repository.BaseRepository;
+import com.jipasoft.service.AccountService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+
+/**
+ * Times every call to the repositories and to the {@code AccountService}
+ * facade. The {@code repository.invocations} and {@code service.invocations}
+ * timers are tagged with:
+ * <ul>
+ * <li>{@code type} and {@code method}: the interface and method called</li>
+ * <li>{@code profile}: the active datastore profiles</li>
+ * <li>{@code outcome}: {@code success} or the simple name of the exception</li>
+ * <li>{@code result}: the size of the result as a bucket ({@code 0},
+ * {@code 1}, {@code 2-10}, ...), {@code none} when there is nothing to
+ * count</li>
+ * </ul>
+ * Methods returning a {@code Stream} are timed until the cursor is open, not
+ * until it is consumed
+ * 
+ * @author Julius Krah
+ *
+ */
+@Aspect
+// outside the transaction advice, so commits are part of the timings, and
+// outside the server timing and JFR aspects, so their overhead is too
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class MetricsAspect {
+	private final MeterRegistry registry;
+	private final String profile;
+	private final Map<Class<?>, String> types = new ConcurrentHashMap<>();
+	private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+	public MetricsAspect(MeterRegistry registry, String profile) {
+		this.registry = registry;
+		this.profile = profile;
+	}
+
+	@Pointcut("execution(public * com.jipasoft.repository.BaseRepository+.*(..))")
+	public void repository() {
+	}
+
+	@Pointcut("execution(public * com.jipasoft.service.AccountService+.*(..))")
+	public void service() {
+	}
+
+	@Around("repository()")
+	public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("repository.invocations", BaseRepository.class, joinPoint);
+	}
+
+	@Around("service()")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("service.invocations", AccountService.class, joinPoint);
+	}
+
+	private Object time(String name, Class<?> root, ProceedingJoinPoint joinPoint) throws Throwable {
+		long start = System.nanoTime();
+		String outcome = "success";
+		Object result = null;
+		try {
+			result = joinPoint.proceed();
+			return result;
+		} catch (Throwable e) {
+			outcome = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			TimerKey key = new TimerKey(name, joinPoint.getTarget().getClass(), joinPoint.getSignature().getName(), outcome,
+					size(result));
+			timers.computeIfAbsent(key, k -> timer(k, root)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private Timer timer(TimerKey key, Class<?> root) {
+		//@formatter:off
+		return Timer.builder(key.name)
+			.tag("type", types.computeIfAbsent(key.target, type -> type(type, root)))
+			.tag("method", key.method)
+			.tag("profile", profile)
+			.tag("outcome", key.outcome)
+			.tag("result", key.result)
+			.register(registry);
+		//@formatter:on
+	}
+
+	/**
+	 * The most specific interface of {@code type} that extends {@code root}
+	 * and sits in the same package, e.g. {@code UserRepository} for all the
+	 * repository implementations
+	 */
+	private static String type(Class<?> type, Class<?> root) {
+		Set<Class<?>> candidates = ClassUtils.getAllInterfacesForClassAsSet(type).stream()
+				.filter(candidate -> root.isAssignableFrom(candidate) && candidate.getPackage().equals(root.getPackage()))
+				.collect(Collectors.toSet());
+		return candidates.stream().filter(candidate -> candidates.stream().noneMatch(other -> other != candidate && candidate.isAssignableFrom(other)))
+				.findFirst().orElse(root).getSimpleName();
+	}
+
+	private static String size(Object result) {
+		if (result instanceof Optional)
+			return ((Optional<?>) result).isPresent() ? "1" : "0";
+		if (!(result instanceof Collection))
+			return "none";
+		int size = ((Collection<?>) result).size();
+		if (size <= 1)
+			return String.valueOf(size);
+		if (size <= 10)
+			return "2-10";
+		if (size <= 100)
+			return "11-100";
+		if (size <= 1000)
+			return "101-1000";
+		return ">1000";
+	}
+
+	/**
+	 * The tags of a timer, so the advice looks its timer up instead of
+	 * building and registering it on every call
+	 */
+	@Value
+	private static class TimerKey {
+		String name;
+		Class<?> target;
+		String method;
+		String outcome;
+		String result;
+	}
+}
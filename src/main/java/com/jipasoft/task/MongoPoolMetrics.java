@@ -0,0 +1,97 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolOpenedEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Gauges of the MongoDB driver connection pools, one set per server:
+ * {@code mongodb.pool.size}, {@code mongodb.pool.checkedout} and
+ * {@code mongodb.pool.waitqueuesize}
+ * 
+ * @author Julius Krah
+ *
+ */
+public class MongoPoolMetrics extends ConnectionPoolListenerAdapter {
+	private final MeterRegistry registry;
+	private final Map<ServerId, AtomicInteger> size = new ConcurrentHashMap<>();
+	private final Map<ServerId, AtomicInteger> checkedOut = new ConcurrentHashMap<>();
+	private final Map<ServerId, AtomicInteger> waitQueue = new ConcurrentHashMap<>();
+
+	public MongoPoolMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+		ServerId server = event.getServerId();
+		Tags tags = Tags.of("cluster", server.getClusterId().getValue(), "server", server.getAddress().toString());
+		size.put(server, registry.gauge("mongodb.pool.size", tags, new AtomicInteger()));
+		checkedOut.put(server, registry.gauge("mongodb.pool.checkedout", tags, new AtomicInteger()));
+		waitQueue.put(server, registry.gauge("mongodb.pool.waitqueuesize", tags, new AtomicInteger()));
+	}
+
+	@Override
+	public void connectionAdded(ConnectionAddedEvent event) {
+		add(size, event.getConnectionId().getServerId(), 1);
+	}
+
+	@Override
+	public void connectionRemoved(ConnectionRemovedEvent event) {
+		add(size, event.getConnectionId().getServerId(), -1);
+	}
+
+	@Override
+	public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+		add(checkedOut, event.getConnectionId().getServerId(), 1);
+	}
+
+	@Override
+	public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+		add(checkedOut, event.getConnectionId().getServerId(), -1);
+	}
+
+	@Override
+	public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+		add(waitQueue, event.getServerId(), 1);
+	}
+
+	@Override
+	public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+		add(waitQueue, event.getServerId(), -1);
+	}
+
+	private static void add(Map<ServerId, AtomicInteger> gauges, ServerId server, int delta) {
+		AtomicInteger gauge = gauges.get(server);
+		if (gauge != null)
+			gauge.addAndGet(delta);
+	}
+}
@@ -0,0 +1,47 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.jipasoft.config.security.PurgeableTokenRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Removes the remember-me series that expired, every
+ * {@code remember-me.purge-interval} milliseconds (an hour by default)
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RememberMeTokenPurge {
+	private final PurgeableTokenRepository tokenRepository;
+	private final int tokenValiditySeconds;
+
+	@Scheduled(initialDelayString = "${remember-me.purge-interval:3600000}", fixedDelayString = "${remember-me.purge-interval:3600000}")
+	public void purge() {
+		Date expired = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(tokenValiditySeconds));
+		long removed = tokenRepository.removeTokensLastUsedBefore(expired);
+		log.debug("Purged {} remember-me series last used before {}", removed, expired);
+	}
+}
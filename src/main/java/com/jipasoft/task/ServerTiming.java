@@ -0,0 +1,170 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+/**
+ * Per request accumulator behind the {@code Server-Timing} response header.
+ * Each thread keeps a single instance that is reset at the start of every
+ * request, so recording a span does not allocate. Nested spans of the same
+ * {@link Phase} (e.g. a repository calling itself through its proxy) are only
+ * counted once.
+ * 
+ * @author Julius Krah
+ *
+ */
+public final class ServerTiming {
+	private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+	private static final Phase[] PHASES = Phase.values();
+
+	private final long[] started = new long[PHASES.length];
+	private final long[] durations = new long[PHASES.length];
+	private final int[] counts = new int[PHASES.length];
+	private final int[] depths = new int[PHASES.length];
+	private long requestStarted;
+	private boolean active;
+
+	/**
+	 * The spans reported in the header, in the order they are listed
+	 */
+	public enum Phase {
+		SECURITY("security", "Security filter chain"),
+		USER_DETAILS("userdetails", "UserDetailsService"),
+		PASSWORD("hash", "Password hashing"),
+		SERVICE("service", "AccountService"),
+		REPOSITORY("db", "Repository"),
+		RENDER("render", "View rendering");
+
+		private final String metric;
+		private final String description;
+
+		Phase(String metric, String description) {
+			this.metric = metric;
+			this.description = description;
+		}
+	}
+
+	private ServerTiming() {
+	}
+
+	/**
+	 * Starts accounting for the request on the current thread
+	 * 
+	 * @return the reset accumulator of the current thread
+	 */
+	public static ServerTiming begin() {
+		ServerTiming timing = CURRENT.get();
+		if (timing == null) {
+			timing = new ServerTiming();
+			CURRENT.set(timing);
+		}
+		for (int i = 0; i < PHASES.length; i++) {
+			timing.durations[i] = 0;
+			timing.counts[i] = 0;
+			timing.depths[i] = 0;
+		}
+		timing.requestStarted = System.nanoTime();
+		timing.active = true;
+		return timing;
+	}
+
+	/**
+	 * @return the accumulator of the request running on the current thread,
+	 *         {@code null} outside of a request
+	 */
+	public static ServerTiming current() {
+		ServerTiming timing = CURRENT.get();
+		return timing != null && timing.active ? timing : null;
+	}
+
+	/**
+	 * Opens a span of {@code phase}. Spans opened while one is already running
+	 * are folded into the outer one
+	 * 
+	 * @param phase
+	 */
+	public void enter(Phase phase) {
+		int i = phase.ordinal();
+		if (depths[i]++ == 0)
+			started[i] = System.nanoTime();
+	}
+
+	/**
+	 * Closes the span opened by the matching {@link #enter(Phase)}
+	 * 
+	 * @param phase
+	 */
+	public void exit(Phase phase) {
+		int i = phase.ordinal();
+		if (depths[i] > 0 && --depths[i] == 0) {
+			durations[i] += System.nanoTime() - started[i];
+			counts[i]++;
+		}
+	}
+
+	/**
+	 * Closes the span of {@code phase} if one is running. Used for the spans
+	 * whose end is not seen by the code that opened them, e.g. a security
+	 * filter redirecting to the login page
+	 * 
+	 * @param phase
+	 */
+	public void close(Phase phase) {
+		if (depths[phase.ordinal()] > 0) {
+			depths[phase.ordinal()] = 1;
+			exit(phase);
+		}
+	}
+
+	/**
+	 * Stops accounting, closing the spans still running
+	 * 
+	 * @return the value of the {@code Server-Timing} header
+	 */
+	public String end() {
+		for (Phase phase : PHASES)
+			close(phase);
+		active = false;
+		StringBuilder header = new StringBuilder(256);
+		for (Phase phase : PHASES) {
+			int i = phase.ordinal();
+			if (counts[i] == 0)
+				continue;
+			header.append(phase.metric).append(";dur=");
+			duration(header, durations[i]);
+			header.append(";desc=\"").append(phase.description);
+			if (counts[i] > 1)
+				header.append(" x").append(counts[i]);
+			header.append("\", ");
+		}
+		header.append("total;dur=");
+		duration(header, System.nanoTime() - requestStarted);
+		return header.toString();
+	}
+
+	/**
+	 * Milliseconds with a microsecond precision
+	 */
+	private static void duration(StringBuilder header, long nanos) {
+		long micros = nanos / 1000;
+		header.append(micros / 1000).append('.');
+		long fraction = micros % 1000;
+		if (fraction < 100)
+			header.append('0');
+		if (fraction < 10)
+			header.append('0');
+		header.append(fraction);
+	}
+}
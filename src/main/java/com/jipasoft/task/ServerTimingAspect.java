@@ -0,0 +1,72 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import com.jipasoft.task.ServerTiming.Phase;
+
+/**
+ * Adds the time spent in the {@code UserDetailsService}, the
+ * {@code PasswordEncoder} or {@code PasswordHashingService}, the
+ * {@code AccountService} facade and the repositories to the
+ * {@link ServerTiming} of the current request
+ * 
+ * @author Julius Krah
+ *
+ */
+@Aspect
+// inside the metrics aspect, outside the JFR aspect and the transaction advice
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class ServerTimingAspect {
+
+	@Around("execution(* org.springframework.security.core.userdetails.UserDetailsService+.loadUserByUsername(..))")
+	public Object userDetails(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(Phase.USER_DETAILS, joinPoint);
+	}
+
+	// the encoder runs on the hashing pool when called by the hashing service
+	@Around("execution(* org.springframework.security.crypto.password.PasswordEncoder+.*(..)) || execution(* com.jipasoft.service.PasswordHashingService+.hash(..))")
+	public Object passwordEncoder(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(Phase.PASSWORD, joinPoint);
+	}
+
+	@Around("execution(public * com.jipasoft.service.AccountService+.*(..))")
+	public Object service(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(Phase.SERVICE, joinPoint);
+	}
+
+	@Around("execution(public * com.jipasoft.repository.BaseRepository+.*(..))")
+	public Object repository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(Phase.REPOSITORY, joinPoint);
+	}
+
+	private static Object time(Phase phase, ProceedingJoinPoint joinPoint) throws Throwable {
+		ServerTiming timing = ServerTiming.current();
+		if (timing == null)
+			return joinPoint.proceed();
+		timing.enter(phase);
+		try {
+			return joinPoint.proceed();
+		} finally {
+			timing.exit(phase);
+		}
+	}
+}
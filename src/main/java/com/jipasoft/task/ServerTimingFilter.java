@@ -0,0 +1,211 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.jipasoft.task.ServerTiming.Phase;
+
+/**
+ * Writes the {@link ServerTiming} of the request into the
+ * {@code Server-Timing} header. The header has to be set before the response
+ * is committed, so it is added right before the first byte of the body, the
+ * redirect or the error is sent; the spans still running at that point (the
+ * view rendering) are closed then. Registered just before the spring security
+ * filter chain, whose span ends in {@link SecurityEnd}
+ * 
+ * @author Julius Krah
+ *
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+	public static final String HEADER = "Server-Timing";
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		ServerTiming timing = ServerTiming.begin();
+		TimedResponse timedResponse = new TimedResponse(response, timing);
+		timing.enter(Phase.SECURITY);
+		try {
+			filterChain.doFilter(request, timedResponse);
+		} finally {
+			// nothing was written, e.g. an empty ajax response
+			timedResponse.writeHeader();
+		}
+	}
+
+	/**
+	 * Ends the span of the security filter chain. Added after the last filter
+	 * of the chain, so requests rejected or answered by spring security have
+	 * their span closed by the response instead
+	 */
+	public static class SecurityEnd extends GenericFilterBean {
+
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+			ServerTiming timing = ServerTiming.current();
+			if (timing != null)
+				timing.close(Phase.SECURITY);
+			chain.doFilter(request, response);
+		}
+	}
+
+	private static class TimedResponse extends HttpServletResponseWrapper {
+		private final ServerTiming timing;
+		private boolean written;
+		private PrintWriter writer;
+		private ServletOutputStream outputStream;
+
+		TimedResponse(HttpServletResponse response, ServerTiming timing) {
+			super(response);
+			this.timing = timing;
+		}
+
+		void writeHeader() {
+			if (written)
+				return;
+			written = true;
+			String header = timing.end();
+			if (!isCommitted())
+				addHeader(HEADER, header);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			writeHeader();
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			writeHeader();
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			writeHeader();
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			writeHeader();
+			super.flushBuffer();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null)
+				writer = new PrintWriter(new TimedWriter(super.getWriter()));
+			return writer;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null)
+				outputStream = new TimedOutputStream(super.getOutputStream());
+			return outputStream;
+		}
+
+		private class TimedWriter extends FilterWriter {
+
+			TimedWriter(PrintWriter delegate) {
+				super(delegate);
+			}
+
+			@Override
+			public void write(int c) throws IOException {
+				writeHeader();
+				super.write(c);
+			}
+
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				writeHeader();
+				super.write(cbuf, off, len);
+			}
+
+			@Override
+			public void write(String str, int off, int len) throws IOException {
+				writeHeader();
+				super.write(str, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				writeHeader();
+				super.flush();
+			}
+		}
+
+		private class TimedOutputStream extends ServletOutputStream {
+			private final ServletOutputStream delegate;
+
+			TimedOutputStream(ServletOutputStream delegate) {
+				this.delegate = delegate;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				writeHeader();
+				delegate.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writeHeader();
+				delegate.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				writeHeader();
+				delegate.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				delegate.close();
+			}
+
+			@Override
+			public boolean isReady() {
+				return delegate.isReady();
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				delegate.setWriteListener(writeListener);
+			}
+		}
+	}
+}
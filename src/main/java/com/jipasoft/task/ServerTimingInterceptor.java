@@ -0,0 +1,51 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.task;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.jipasoft.task.ServerTiming.Phase;
+
+/**
+ * Opens the {@link Phase#RENDER render} span of the {@link ServerTiming} once
+ * the handler returned a view. The span is closed by {@link ServerTimingFilter}
+ * before the rendered page is written
+ * 
+ * @author Julius Krah
+ *
+ */
+public class ServerTimingInterceptor extends HandlerInterceptorAdapter {
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView)
+			throws Exception {
+		ServerTiming timing = ServerTiming.current();
+		if (timing != null && modelAndView != null && modelAndView.hasView())
+			timing.enter(Phase.RENDER);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+			throws Exception {
+		ServerTiming timing = ServerTiming.current();
+		if (timing != null)
+			timing.close(Phase.RENDER);
+	}
+}
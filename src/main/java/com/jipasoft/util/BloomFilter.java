@@ -0,0 +1,127 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over strings. {@link #mightContain(String)} never
+ * answers {@code false} for a string that was {@link #put(String) put}, and
+ * answers {@code true} for other strings with a probability close to the one
+ * it was sized for, as long as it holds no more strings than expected.
+ * <p>
+ * The bits live in an {@link AtomicLongArray} and are set with CAS, so puts
+ * and lookups may run concurrently. Strings cannot be removed.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class BloomFilter {
+	private final AtomicLongArray words;
+	private final long bits;
+	private final int hashes;
+	private final AtomicLong bitCount = new AtomicLong();
+
+	/**
+	 * @param expectedInsertions
+	 *            the number of strings the filter is sized for
+	 * @param falsePositiveRate
+	 *            the rate of false positives at {@code expectedInsertions},
+	 *            e.g. {@code 0.01}
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		long n = Math.max(1, expectedInsertions);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) >>> 6));
+		this.words = new AtomicLongArray(words);
+		this.bits = (long) words << 6;
+		this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+	}
+
+	/**
+	 * @param value
+	 *            the string to add
+	 */
+	public void put(String value) {
+		long hash = fnv(value);
+		long h1 = mix(hash);
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(h1 + i * h2, bits);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			do {
+				current = words.get(word);
+				if ((current & mask) != 0)
+					break;
+			} while (!words.compareAndSet(word, current, current | mask));
+			if ((current & mask) == 0)
+				bitCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @param value
+	 *            the string to look for
+	 * @return boolean {@code false} if {@code value} was never put
+	 */
+	public boolean mightContain(String value) {
+		long hash = fnv(value);
+		long h1 = mix(hash);
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(h1 + i * h2, bits);
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return double the false positive rate at the current fill of the
+	 *         filter
+	 */
+	public double expectedFalsePositiveRate() {
+		return Math.pow((double) bitCount.get() / bits, hashes);
+	}
+
+	/**
+	 * 64 bit FNV-1a over the characters of {@code value}
+	 */
+	private static long fnv(String value) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3, spreads the bits of the FNV hash
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB93FE1A85A53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -5,6 +5,7 @@ public class Profiles {
 	public static final String POSTGRES = "postgres";
 	public static final String MYSQL = "mysql";
 	public static final String MONGO = "mongo";
+	public static final String MEMORY = "memory";
 	public static final String EMAIL = "email";
 	public static final String HEROKU = "heroku";
 	public static final String ASPECT = "aspect";
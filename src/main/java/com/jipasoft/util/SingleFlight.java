@@ -0,0 +1,114 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs
+ * the call, the callers arriving while it is in flight wait for its result.
+ * A caller that waited longer than the timeout runs the call itself. Results
+ * are shared between the callers, so they must be immutable.
+ * <p>
+ * The {@code singleflight.calls} counter is tagged with the {@code name} of
+ * the flight and the {@code result}: {@code leader} (ran the call),
+ * {@code deduplicated} (got the result of another caller) or {@code timeout}.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ * @param <K>
+ *            the key of the calls
+ * @param <V>
+ *            the result of the calls
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final long timeoutMillis;
+	private final Counter leaders;
+	private final Counter deduplicated;
+	private final Counter timeouts;
+
+	/**
+	 * @param name
+	 *            the name of the flight in the metrics
+	 * @param timeoutMillis
+	 *            how long a caller waits for the call of another one
+	 * @param registry
+	 *            registry of the {@code singleflight.calls} counter
+	 */
+	public SingleFlight(String name, long timeoutMillis, MeterRegistry registry) {
+		this.timeoutMillis = timeoutMillis;
+		this.leaders = registry.counter("singleflight.calls", "name", name, "result", "leader");
+		this.deduplicated = registry.counter("singleflight.calls", "name", name, "result", "deduplicated");
+		this.timeouts = registry.counter("singleflight.calls", "name", name, "result", "timeout");
+	}
+
+	/**
+	 * @param key
+	 *            the key of the call
+	 * @param call
+	 *            the call to run unless one for {@code key} is in flight
+	 * @return V the result of the call
+	 */
+	public V execute(K key, Supplier<V> call) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+		if (existing == null)
+			return lead(key, flight, call);
+		try {
+			V result = existing.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			deduplicated.increment();
+			return result;
+		} catch (TimeoutException e) {
+			timeouts.increment();
+			return call.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return call.get();
+		} catch (ExecutionException e) {
+			deduplicated.increment();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private V lead(K key, CompletableFuture<V> flight, Supplier<V> call) {
+		leaders.increment();
+		try {
+			V result = call.get();
+			flight.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+}
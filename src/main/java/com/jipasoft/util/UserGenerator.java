@@ -0,0 +1,145 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.util;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+
+/**
+ * Generates realistic, reproducible users for load tests and benchmarks. The
+ * user at a given index is always the same for a given seed, so ranges can be
+ * generated in parallel and a load test can recompute the logins of a
+ * dataset.
+ * <p>
+ * First and last names follow a Zipf-like distribution, so a few name
+ * prefixes are very common in the logins. Every user has the password
+ * {@value #PASSWORD}, hashed a handful of times up front: hashing millions of
+ * passwords would take hours.
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+public class UserGenerator {
+	public static final String PASSWORD = "password";
+
+	//@formatter:off
+	private static final String[] FIRST_NAMES = { "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda",
+			"William", "Elizabeth", "David", "Barbara", "Kwame", "Ama", "Kofi", "Akosua", "Yaw", "Abena", "Julius", "Efua",
+			"Pierre", "Marie", "Jean", "Sophie", "Luca", "Giulia", "Hiroshi", "Yuki", "Wei", "Mei" };
+	private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis",
+			"Mensah", "Owusu", "Boateng", "Asante", "Krah", "Martin", "Bernard", "Dubois", "Rossi", "Russo", "Sato", "Suzuki",
+			"Wang", "Li", "Zhang", "Kim", "Lee", "Nguyen", "Silva", "Santos", "Muller", "Schmidt" };
+	//@formatter:on
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final long CREATED_RANGE_SECONDS = 3L * 365 * 24 * 3600;
+
+	private final long seed;
+	private final String[] hashes;
+	private final ZonedDateTime epoch = ZonedDateTime.of(2016, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+	/**
+	 * @param seed
+	 *            the seed of the dataset
+	 * @param encoder
+	 *            the encoder of the pre-hashed passwords
+	 * @param hashes
+	 *            the number of distinct hashes of {@value #PASSWORD}
+	 */
+	public UserGenerator(long seed, PasswordEncoder encoder, int hashes) {
+		this.seed = seed;
+		this.hashes = new String[hashes];
+		for (int i = 0; i < hashes; i++)
+			this.hashes[i] = encoder.encode(PASSWORD);
+	}
+
+	/**
+	 * Generates the user at {@code index}. The login and email are unique
+	 * across indexes, the id is left to the datastore
+	 * 
+	 * @param index
+	 *            the position of the user in the dataset
+	 * @return User a new transient user
+	 */
+	public User generate(long index) {
+		SplittableRandom random = new SplittableRandom(seed + index * GOLDEN_GAMMA);
+		String firstName = FIRST_NAMES[skewed(random, FIRST_NAMES.length)];
+		String lastName = LAST_NAMES[skewed(random, LAST_NAMES.length)];
+		String login = (firstName + lastName).toLowerCase() + index;
+
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@example.com");
+		user.setFirstName(firstName);
+		user.setLastName(lastName);
+		user.setPassword(hashes[random.nextInt(hashes.length)]);
+		user.setActivated(random.nextInt(100) < 95);
+		user.setCreatedBy("generator");
+		user.setCreatedDate(epoch.plusSeconds(random.nextLong(CREATED_RANGE_SECONDS)));
+		Set<Authority> authorities = new HashSet<>();
+		authorities.add(new Authority("ROLE_USER"));
+		if (random.nextInt(100) == 0)
+			authorities.add(new Authority("ROLE_ADMIN"));
+		user.setAuthorities(authorities);
+		return user;
+	}
+
+	/**
+	 * Generates the users from {@code from} inclusive to {@code to} exclusive
+	 */
+	public List<User> generate(long from, long to) {
+		List<User> users = new ArrayList<>((int) (to - from));
+		for (long i = from; i < to; i++)
+			users.add(generate(i));
+		return users;
+	}
+
+	/**
+	 * Picks an index in {@code [0, count)} with a Zipf-like skew towards the
+	 * low indexes, for load tests that should hit a few accounts much more
+	 * often than the rest
+	 * 
+	 * @param random
+	 *            the source of randomness of the caller
+	 * @param count
+	 *            the number of users in the dataset
+	 * @return the index of the user to use
+	 */
+	public static long sample(Random random, long count) {
+		return skew(random.nextDouble(), count);
+	}
+
+	private static int skewed(SplittableRandom random, int count) {
+		return (int) skew(random.nextDouble(), count);
+	}
+
+	private static long skew(double uniform, long count) {
+		// log-uniform: P(index) is roughly proportional to 1 / (index + 1)
+		long index = (long) Math.pow(count + 1, uniform) - 1;
+		return Math.min(index, count - 1);
+	}
+}
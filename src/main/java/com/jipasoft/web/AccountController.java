@@ -15,6 +15,8 @@
 */
 package com.jipasoft.web;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Locale;
@@ -23,7 +25,8 @@ import java.util.Optional;
 import javax.validation.Valid;
 
 import org.springframework.context.MessageSource;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.Errors;
@@ -35,12 +38,21 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
 import com.jipasoft.domain.User;
 import com.jipasoft.domain.dto.UserDTO;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 import com.jipasoft.service.AccountService;
+import com.jipasoft.service.KnownAccountsService;
+import com.jipasoft.service.PasswordHashingService;
 import com.jipasoft.util.AjaxUtils;
 
 import lombok.NonNull;
@@ -55,10 +67,17 @@ public class AccountController {
 	@NonNull
 	private final AccountService accountService;
 	@NonNull
-	private final PasswordEncoder encoder;
+	private final PasswordHashingService hashing;
+	@NonNull
+	private final KnownAccountsService knownAccounts;
 	@NonNull
 	private final MessageSource messageSource;
+	@NonNull
+	private final ObjectMapper mapper;
 	private static String ADD_USER_VIEW_NAME = "add_user";
+	private static int MAX_PAGE_SIZE = 1000;
+	/** Satisfies the form validation; updates never change the password */
+	private static String UNCHANGED_PASSWORD = "unchanged";
 
 	@GetMapping(path = { "add", "signup" })
 	public String add(Model model, @RequestHeader(value = "X-Requested-With", required = false) String requestedWith) {
@@ -76,19 +95,21 @@ public class AccountController {
 	@GetMapping(path = "update/{id}")
 	public String update(Model model, @RequestHeader(value = "X-Requested-With", required = false) String requestedWith,
 			@PathVariable String id) {
-		Optional<User> user = accountService.findAccountById(id);
+		Optional<UserSummary> user = accountService.findSummaryById(id);
 		UserDTO userDTO = new UserDTO();
 
 		if (user.isPresent()) {
-			User u = user.get();
+			UserSummary u = user.get();
 
-			userDTO.setPassword(u.getPassword());
+			userDTO.setPassword(UNCHANGED_PASSWORD);
 			userDTO.setId(u.getId());
 			userDTO.setLogin(u.getLogin());
 			userDTO.setFirstName(u.getFirstName());
 			userDTO.setLastName(u.getLastName());
 			userDTO.setEmail(u.getEmail());
 			userDTO.setActivated(u.isActivated());
+			userDTO.setCreatedBy(u.getCreatedBy());
+			userDTO.setCreatedDate(u.getCreatedDate());
 		}
 		model.addAttribute(userDTO);
 		if (AjaxUtils.isAjaxRequest(requestedWith)) {
@@ -102,8 +123,17 @@ public class AccountController {
 		if (errors.hasErrors()) {
 			return ADD_USER_VIEW_NAME;
 		}
-		accountService.save(userDTO.createUser(encoder));
-		log.debug("Saved user: {}", userDTO.createUser(encoder));
+		// report taken logins and emails before paying for the hash
+		if (knownAccounts.findByLogin(userDTO.getLogin(), accountService::findAccountByLogin).isPresent())
+			errors.rejectValue("login", "user.login.taken");
+		if (knownAccounts.findByEmail(userDTO.getEmail(), accountService::findAccountByEmail).isPresent())
+			errors.rejectValue("email", "user.email.taken");
+		if (errors.hasErrors()) {
+			return ADD_USER_VIEW_NAME;
+		}
+		User user = userDTO.createUser(hashing);
+		accountService.save(user);
+		log.debug("Saved user: {}", user.getLogin());
 		ra.addFlashAttribute("message", "create.add").addFlashAttribute("name", userDTO.getLogin());
 
 		return "redirect:/";
@@ -114,20 +144,16 @@ public class AccountController {
 		if (errors.hasErrors()) {
 			return ADD_USER_VIEW_NAME;
 		}
-		Optional<User> user = accountService.findAccountById(userDTO.getId());
-		if (user.isPresent()) {
-			User u = user.get();
-			u.setLogin(userDTO.getLogin());
-			u.setFirstName(userDTO.getFirstName());
-			u.setLastName(userDTO.getLastName());
-			u.setEmail(userDTO.getEmail());
-			u.setActivated(userDTO.isActivated());
-			u.setLastModifiedBy(userDTO.getLogin());
-			u.setLastModifiedDate(ZonedDateTime.now());
-
-			log.debug("Updating user: {}", u);
-			accountService.save(u);
-		}
+		//@formatter:off
+		UserUpdate update = new UserUpdate(userDTO.getId())
+				.login(userDTO.getLogin())
+				.firstName(userDTO.getFirstName())
+				.lastName(userDTO.getLastName())
+				.email(userDTO.getEmail())
+				.activated(userDTO.isActivated())
+				.lastModified(userDTO.getLogin(), ZonedDateTime.now());
+		//@formatter:on
+		log.debug("Updated {} user(s): {}", accountService.update(update), update);
 
 		ra.addFlashAttribute("message", "create.update").addFlashAttribute("name", userDTO.getLogin());
 		return "redirect:/";
@@ -135,18 +161,38 @@ public class AccountController {
 
 	@ResponseBody
 	@DeleteMapping("delete/{id}")
-	public String delete(@PathVariable String id, Locale loc) {
-		Optional<User> user = accountService.findAccountById(id);
-		if (user.isPresent()) {
-			accountService.deleteAccount(user.get());
-			return messageSource.getMessage("create.delete", new Object[] { user.get().getLogin() }, loc);
-		}
+	public String delete(@PathVariable String id, @RequestParam(required = false) String login, Locale loc) {
+		// the page passes the login along, so the account is not loaded
+		if (accountService.deleteAccountById(id) > 0)
+			return messageSource.getMessage("create.delete", new Object[] { login == null ? id : login }, loc);
 		return String.format("No user with id: %s found", id);
 	}
 
 	@ResponseBody
+	@GetMapping(path = "find_all", params = "size")
+	public List<UserSummary> users(@RequestParam(required = false) String after, @RequestParam int size) {
+		return accountService.findSummaryPage(after, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+	}
+
+	/**
+	 * Writes the summaries of all users as a JSON array while they are read
+	 * from the database, so no list of all accounts is ever held in memory
+	 * 
+	 * @return the streamed JSON array
+	 */
 	@GetMapping("find_all")
-	public List<User> users() {
-		return accountService.findAll();
+	public ResponseEntity<StreamingResponseBody> users() {
+		StreamingResponseBody body = out -> {
+			try (SequenceWriter writer = mapper.writer().writeValuesAsArray(out)) {
+				accountService.forEachSummary(user -> {
+					try {
+						writer.write(user);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
 	}
 }
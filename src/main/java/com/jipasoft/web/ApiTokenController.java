@@ -0,0 +1,76 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.jipasoft.config.security.ApiTokenAuthenticationFilter;
+import com.jipasoft.config.security.ApiTokenService;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Issues API tokens to machine clients signing in with HTTP Basic, and revokes
+ * the token presented as bearer. A bearer token cannot be traded for a new
+ * one, otherwise a stolen or revoked token could renew itself past its expiry
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@RestController
+@RequestMapping("api/token")
+@RequiredArgsConstructor
+public class ApiTokenController {
+	@NonNull
+	private final ApiTokenService tokenService;
+
+	@PostMapping
+	public Map<String, Object> issue(Authentication authentication) {
+		if (!(authentication instanceof UsernamePasswordAuthenticationToken))
+			throw new ResponseStatusException(HttpStatus.FORBIDDEN, "API tokens are only issued for a login and password");
+		log.debug("Issuing an API token to {}", authentication.getName());
+		Map<String, Object> token = new LinkedHashMap<>();
+		token.put("access_token", tokenService.issue(authentication.getName(), authentication.getAuthorities()));
+		token.put("token_type", "Bearer");
+		token.put("expires_in", tokenService.getValiditySeconds());
+		return token;
+	}
+
+	@DeleteMapping
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public void revoke(HttpServletRequest request) {
+		String token = ApiTokenAuthenticationFilter.token(request);
+		if (token == null)
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No bearer token to revoke");
+		tokenService.revoke(token);
+	}
+}
@@ -0,0 +1,217 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.web;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jipasoft.domain.User;
+import com.jipasoft.service.AccountService;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exports all accounts as newline delimited JSON or CSV. Accounts are written
+ * to the response while they are read from the database cursor, so the heap
+ * used by an export does not depend on the number of accounts.
+ * <p>
+ * Each export is recorded, tagged with its {@code format}, in the
+ * {@code accounts.export} timer, the {@code accounts.export.rows} counter and
+ * the {@code accounts.export.bytes} summary; their rates are the export
+ * throughput
+ * </p>
+ * 
+ * @author Julius Krah
+ *
+ */
+@Slf4j
+@Controller
+@RequestMapping("user")
+@RequiredArgsConstructor
+public class ExportController {
+	@NonNull
+	private final AccountService accountService;
+	@NonNull
+	private final ObjectMapper mapper;
+	@NonNull
+	private final MeterRegistry registry;
+	private static int BUFFER_SIZE = 64 * 1024;
+	private static int FLUSH_EVERY = 1000;
+	private static char CSV_SEPARATOR = ';';
+	private static String CSV_HEADER = "id;login;first_name;last_name;email;activated;created_by;created_date";
+
+	public enum Format {
+		NDJSON("application/x-ndjson", "ndjson"), CSV("text/csv", "csv");
+
+		private final String contentType;
+		private final String extension;
+
+		Format(String contentType, String extension) {
+			this.contentType = contentType;
+			this.extension = extension;
+		}
+	}
+
+	@GetMapping("export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+		Format f;
+		try {
+			f = Format.valueOf(format.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown export format: %s", format));
+		}
+		StreamingResponseBody body = out -> write(f, out);
+		//@formatter:off
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(f.contentType))
+				.header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"accounts.%s\"", f.extension))
+				.body(body);
+		//@formatter:on
+	}
+
+	private void write(Format format, OutputStream out) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(out);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), BUFFER_SIZE);
+		//@formatter:off
+		ObjectWriter json = mapper.writer()
+				.without(SerializationFeature.INDENT_OUTPUT)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+				.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		//@formatter:on
+		long[] rows = { 0 };
+		long start = System.nanoTime();
+
+		if (format == Format.CSV)
+			writer.write(CSV_HEADER + "\n");
+		accountService.forEachAccount(user -> {
+			try {
+				if (format == Format.CSV)
+					writeCsv(writer, user);
+				else {
+					json.writeValue(writer, user);
+					writer.write('\n');
+				}
+				if (++rows[0] % FLUSH_EVERY == 0) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		writer.flush();
+
+		long nanos = System.nanoTime() - start;
+		String tag = format.extension;
+		Timer.builder("accounts.export").tag("format", tag).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+		registry.counter("accounts.export.rows", "format", tag).increment(rows[0]);
+		DistributionSummary.builder("accounts.export.bytes").baseUnit("bytes").tag("format", tag).register(registry).record(counter.count);
+
+		long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+		log.info("Exported {} accounts as {} ({} bytes) in {} ms: {} rows/s, {} bytes/s", rows[0], format, counter.count, elapsed,
+				rows[0] * 1000 / elapsed, counter.count * 1000 / elapsed);
+	}
+
+	private void writeCsv(Writer writer, User user) throws IOException {
+		writeCsvValue(writer, user.getId());
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getLogin());
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getFirstName());
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getLastName());
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getEmail());
+		writer.write(CSV_SEPARATOR);
+		writer.write(Boolean.toString(user.isActivated()));
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getCreatedBy());
+		writer.write(CSV_SEPARATOR);
+		writeCsvValue(writer, user.getCreatedDate() == null ? null : user.getCreatedDate().toString());
+		writer.write('\n');
+	}
+
+	private void writeCsvValue(Writer writer, String value) throws IOException {
+		if (value == null)
+			return;
+		if (!needsQuotes(value)) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	private static boolean needsQuotes(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == CSV_SEPARATOR || c == ',' || c == '"' || c == '\n' || c == '\r')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Keeps track of the number of bytes written to the response
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
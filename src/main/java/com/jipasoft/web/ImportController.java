@@ -0,0 +1,52 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.web;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.jipasoft.domain.dto.ImportReport;
+import com.jipasoft.service.AccountImportService;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Bulk import of accounts. The request body is the CSV file itself and is read
+ * as a stream, so large files are never buffered in memory or on disk
+ * 
+ * @author Julius Krah
+ *
+ */
+@Controller
+@RequestMapping("user")
+@RequiredArgsConstructor
+public class ImportController {
+	@NonNull
+	private final AccountImportService importService;
+
+	@ResponseBody
+	@PostMapping(path = "import", consumes = "text/csv")
+	public ImportReport importAccounts(HttpServletRequest request) throws IOException {
+		return importService.importAccounts(request.getInputStream());
+	}
+}
@@ -0,0 +1,110 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and the replica. Each
+ * one holds a marker row naming it
+ */
+public class ReplicaRoutingDataSourceTests {
+	private static final String WHICH = "SELECT name FROM node";
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private DataSource primary;
+	private DataSource replica;
+
+	@Before
+	public void setUp() {
+		primary = database("primary");
+		replica = database("replica");
+	}
+
+	@After
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+		new JdbcTemplate(primary).execute("DROP TABLE node");
+		new JdbcTemplate(replica).execute("DROP TABLE node");
+	}
+
+	@Test
+	public void testReadOnlyTransactionsUseReplica() {
+		DataSource dataSource = routing(replica);
+
+		assertThat(inTransaction(dataSource, true)).isEqualTo("replica");
+		assertThat(inTransaction(dataSource, false)).isEqualTo("primary");
+		assertThat(new JdbcTemplate(dataSource).queryForObject(WHICH, String.class)).isEqualTo("primary");
+		assertThat(registry.counter("datasource.routing", "route", "replica").count()).isEqualTo(1);
+	}
+
+	@Test
+	public void testReadYourWritesWithinRequest() {
+		DataSource dataSource = routing(replica);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+		assertThat(inTransaction(dataSource, true)).isEqualTo("replica");
+		assertThat(inTransaction(dataSource, false)).isEqualTo("primary");
+		assertThat(inTransaction(dataSource, true)).isEqualTo("primary");
+
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		assertThat(inTransaction(dataSource, true)).isEqualTo("replica");
+	}
+
+	@Test
+	public void testFallbackToPrimaryWhenReplicaIsDown() {
+		DataSource dataSource = routing(new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/mem:replica"));
+
+		assertThat(inTransaction(dataSource, true)).isEqualTo("primary");
+		assertThat(inTransaction(dataSource, true)).isEqualTo("primary");
+		assertThat(registry.counter("datasource.replica.fallbacks").count()).isEqualTo(1);
+	}
+
+	private DataSource routing(DataSource replica) {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica, 60000, registry);
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+
+	private static String inTransaction(DataSource dataSource, boolean readOnly) {
+		TransactionTemplate template = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		template.setReadOnly(readOnly);
+		return template.execute(status -> new JdbcTemplate(dataSource).queryForObject(WHICH, String.class));
+	}
+
+	private static DataSource database(String name) {
+		DataSource dataSource = new DriverManagerDataSource(String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", name));
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("CREATE TABLE node (name VARCHAR(10))");
+		jdbc.update("INSERT INTO node VALUES (?)", name);
+		return dataSource;
+	}
+}
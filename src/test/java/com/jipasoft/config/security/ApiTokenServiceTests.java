@@ -0,0 +1,75 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+public class ApiTokenServiceTests {
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+	private final ApiTokenService tokenService = new ApiTokenService(SECRET, 60);
+
+	@Test
+	public void testIssuedTokenAuthenticates() {
+		String token = tokenService.issue("admin", AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+
+		Authentication authentication = tokenService.authenticate(token);
+		assertThat(authentication.isAuthenticated()).isTrue();
+		assertThat(authentication.getName()).isEqualTo("admin");
+		assertThat(AuthorityUtils.authorityListToSet(authentication.getAuthorities())).containsOnly("ROLE_USER", "ROLE_ADMIN");
+	}
+
+	@Test
+	public void testTamperedTokenIsRejected() {
+		String token = tokenService.issue("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		String payload = new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))), StandardCharsets.UTF_8);
+		String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(payload.replace("ROLE_USER", "ROLE_ADMIN").getBytes(StandardCharsets.UTF_8))
+				+ token.substring(token.indexOf('.'));
+
+		assertThatThrownBy(() -> tokenService.authenticate(forged)).isInstanceOf(BadCredentialsException.class);
+		assertThatThrownBy(() -> new ApiTokenService("another secret, another instance".getBytes(StandardCharsets.UTF_8), 60).authenticate(token))
+				.isInstanceOf(BadCredentialsException.class);
+		assertThatThrownBy(() -> tokenService.authenticate("not a token")).isInstanceOf(BadCredentialsException.class);
+	}
+
+	@Test
+	public void testExpiredTokenIsRejected() {
+		ApiTokenService expired = new ApiTokenService(SECRET, -1);
+		String token = expired.issue("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+		assertThatThrownBy(() -> expired.authenticate(token)).isInstanceOf(CredentialsExpiredException.class);
+	}
+
+	@Test
+	public void testRevokedTokenIsRejected() {
+		String token = tokenService.issue("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		String other = tokenService.issue("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		tokenService.revoke(token);
+		tokenService.removeExpiredRevocations();
+
+		assertThatThrownBy(() -> tokenService.authenticate(token)).isInstanceOf(BadCredentialsException.class);
+		assertThat(tokenService.authenticate(other).getName()).isEqualTo("user");
+	}
+}
@@ -0,0 +1,58 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+
+public class CachingTokenRepositoryTests {
+	private final MemoryTokenRepository store = new MemoryTokenRepository();
+	private final Cache cache = new ConcurrentMapCache(CachingTokenRepository.TOKENS_CACHE);
+
+	@Test
+	public void testRemoveUserTokensEvictsOnlyThatUser() {
+		CachingTokenRepository tokens = new CachingTokenRepository(store, cache, 60);
+		tokens.createNewToken(new PersistentRememberMeToken("julius", "series-1", "token-1", new Date()));
+		tokens.createNewToken(new PersistentRememberMeToken("julius", "series-2", "token-2", new Date()));
+		tokens.createNewToken(new PersistentRememberMeToken("krah", "series-3", "token-3", new Date()));
+
+		tokens.removeUserTokens("julius");
+
+		assertThat(cache.get("series-1")).isNull();
+		assertThat(cache.get("series-2")).isNull();
+		assertThat(cache.get("series-3")).isNotNull();
+		assertThat(tokens.getTokenForSeries("series-1")).isNull();
+		assertThat(tokens.getTokenForSeries("series-3").getTokenValue()).isEqualTo("token-3");
+	}
+
+	@Test
+	public void testRemovalByAnotherInstanceIsSeenOnceTheCachedTokenIsOld() {
+		CachingTokenRepository tokens = new CachingTokenRepository(store, cache, 0);
+		tokens.createNewToken(new PersistentRememberMeToken("julius", "series-1", "token-1", new Date()));
+
+		// another instance shares the store, not the cache
+		store.removeUserTokens("julius");
+
+		assertThat(tokens.getTokenForSeries("series-1")).isNull();
+		assertThat(cache.get("series-1")).isNull();
+	}
+}
@@ -0,0 +1,61 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LoginThrottleFilterTests {
+	private final LoginThrottleFilter filter = new LoginThrottleFilter(new RateLimiter(60, 100, 1024), new RateLimiter(1, 1, 1024),
+			new SimpleMeterRegistry());
+
+	@Test
+	public void testThrottlesFormAndBasicLoginsOfTheSameLogin() throws Exception {
+		MockHttpServletRequest form = new MockHttpServletRequest("POST", "/login");
+		form.setServletPath("/login");
+		form.setParameter("username", "Admin");
+		assertThat(status(form)).isEqualTo(200);
+
+		MockHttpServletRequest basic = new MockHttpServletRequest("POST", "/api/token");
+		basic.setServletPath("/api/token");
+		basic.addHeader(HttpHeaders.AUTHORIZATION,
+				"Basic " + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8)));
+		assertThat(status(basic)).isEqualTo(429);
+	}
+
+	@Test
+	public void testLogin() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/token");
+		request.addHeader(HttpHeaders.AUTHORIZATION, "Basic not base64!");
+		assertThat(LoginThrottleFilter.login(request)).isNull();
+	}
+
+	private int status(MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response.getStatus();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.config.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RateLimiterTests {
+	private final AtomicLong clock = new AtomicLong(TimeUnit.MINUTES.toNanos(1));
+	// one permit every 10 seconds, 3 at once
+	private final RateLimiter limiter = new RateLimiter(6, 3, 1024, clock::get);
+
+	@Test
+	public void testBurstThenSustainedRate() {
+		for (int i = 0; i < 3; i++)
+			assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		long wait = limiter.tryAcquire("10.0.0.1");
+		assertThat(wait).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+
+		clock.addAndGet(wait);
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+	}
+
+	@Test
+	public void testKeysAreLimitedSeparately() {
+		for (int i = 0; i < 3; i++)
+			limiter.tryAcquire("admin");
+		assertThat(limiter.tryAcquire("admin")).isPositive();
+		assertThat(limiter.tryAcquire("user")).isZero();
+	}
+
+	@Test
+	public void testKeysWithTheSameHashCodeAreLimitedSeparately() {
+		assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+		for (int i = 0; i < 3; i++)
+			limiter.tryAcquire("Aa");
+		assertThat(limiter.tryAcquire("Aa")).isPositive();
+		assertThat(limiter.tryAcquire("BB")).isZero();
+	}
+
+	@Test
+	public void testIdleKeysRecover() {
+		for (int i = 0; i < 3; i++)
+			limiter.tryAcquire("admin");
+		clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+		for (int i = 0; i < 3; i++)
+			assertThat(limiter.tryAcquire("admin")).isZero();
+	}
+}
@@ -19,19 +19,33 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.jipasoft.config.ApplicationTests;
 import com.jipasoft.domain.Authority;
 import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+import com.jipasoft.domain.dto.UserUpdate;
 import com.jipasoft.util.Profiles;
 
 import lombok.extern.slf4j.Slf4j;
@@ -39,9 +53,16 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 @ActiveProfiles(Profiles.H2)
 @Transactional
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class UserRepositoryTests extends ApplicationTests {
 	@Autowired
 	private UserRepository userRepository;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	@PersistenceContext
+	private EntityManager em;
 
 	@Before
 	public void setUp() {
@@ -88,6 +109,55 @@ public class UserRepositoryTests extends ApplicationTests {
 				u.getEmail(), u.getCreatedDate(), u.getLastModifiedDate());
 	}
 
+	@Test
+	public void testPartialUpdate() {
+		String id = userRepository.findOneByLogin("julius").get().getId();
+
+		assertThat(userRepository.update(new UserUpdate(id).firstName("Julius").activated(true))).isEqualTo(1);
+		assertThat(userRepository.update(new UserUpdate("unknown").firstName("Julius"))).isEqualTo(0);
+
+		// the statement bypasses the persistence context
+		assertThat(jdbcTemplate.queryForMap("SELECT first_name, activated, reset_key FROM account WHERE id = ?", id))
+				.containsEntry("FIRST_NAME", "Julius").containsEntry("ACTIVATED", true).containsEntry("RESET_KEY", "aw55asa7d5Sdcs8dAsa8");
+	}
+
+	@Test
+	public void testFindLoginsByIdIgnoresUnflushedChanges() {
+		User user = userRepository.findOneByLogin("julius").get();
+		user.setLogin("krah");
+
+		// the stored login, not the pending rename
+		assertThat(userRepository.findLoginsById(Arrays.asList(user.getId(), "unknown"))).containsExactly("julius");
+	}
+
+	@Test
+	public void testUpsert() {
+		User user = new User();
+		user.setId(UUID.randomUUID().toString());
+		user.setLogin("krah");
+		user.setEmail("krah@localhost");
+		user.setCreatedBy("system");
+		user.setPassword("$2a$10$mE.qmcV0mFU5NcKh73TZx.z4ueI/.bDWbj0T1BYyqP481kGGarKLG");
+		userRepository.upsert(user);
+		user.setFirstName("Julius");
+		user.setCreatedBy("admin");
+		userRepository.upsert(user);
+
+		// the statements bypass the persistence context
+		assertThat(jdbcTemplate.queryForMap("SELECT first_name, created_by FROM account WHERE login = 'krah'"))
+				.containsEntry("FIRST_NAME", "Julius").containsEntry("CREATED_BY", "system");
+		assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM account", Integer.class)).isEqualTo(2);
+	}
+
+	@Test
+	public void testDeleteById() {
+		String id = userRepository.findOneByLogin("julius").get().getId();
+
+		assertThat(userRepository.deleteById(id)).isEqualTo(1);
+		assertThat(userRepository.deleteById(id)).isEqualTo(0);
+		assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM user_role WHERE account_id = ?", Integer.class, id)).isEqualTo(0);
+	}
+
 	@Test
 	public void testFindOneByResetKey() {
 		User user = userRepository.findOneByLogin("julius").get();
@@ -127,4 +197,116 @@ public class UserRepositoryTests extends ApplicationTests {
 		assertNotNull(userById);
 		assertThat(user.getId()).isEqualTo(userById.getId());
 	}
+
+	@Test
+	public void testFindPage() {
+		users(4, "user").forEach(userRepository::save);
+
+		List<User> first = userRepository.findPage(null, 3);
+		assertThat(first).hasSize(3);
+		List<User> second = userRepository.findPage(first.get(2).getId(), 3);
+		assertThat(second).hasSize(2);
+		assertThat(second.get(0).getId().compareTo(first.get(2).getId())).isPositive();
+	}
+
+	@Test
+	public void testStreamAll() {
+		users(3, "stream").forEach(userRepository::save);
+		em.flush();
+		em.clear();
+		List<User> streamed = new ArrayList<>();
+		try (Stream<User> users = userRepository.streamAll()) {
+			users.forEach(streamed::add);
+		}
+		assertThat(streamed).extracting(User::getLogin).containsExactlyInAnyOrder("julius", "stream0", "stream1", "stream2");
+		// the persistence context does not keep the streamed users
+		assertThat(streamed).allMatch(user -> !em.contains(user));
+		assertThat(streamed.stream().filter(user -> "julius".equals(user.getLogin())).findFirst().get().getAuthorities()).hasSize(2);
+	}
+
+	@Test
+	public void testSaveAllAndDeleteAllById() {
+		List<User> users = users(120, "batch");
+		userRepository.saveAll(users);
+		assertThat(userRepository.findAll()).hasSize(121);
+
+		userRepository.deleteAllById(users.stream().map(User::getId).collect(Collectors.toList()));
+		assertThat(userRepository.findAll()).extracting(User::getLogin).containsExactly("julius");
+	}
+
+	@Test
+	public void testSaveAllMergesDetachedUsers() {
+		User user = userRepository.findOneByLogin("julius").get();
+		em.detach(user);
+		user.setFirstName("Julius");
+
+		userRepository.saveAll(Arrays.asList(user));
+
+		assertThat(jdbcTemplate.queryForObject("SELECT first_name FROM account WHERE login = 'julius'", String.class)).isEqualTo("Julius");
+	}
+
+	@Test
+	public void testKeyLookupsUseIndexes() {
+		for (String column : new String[] { "login", "email", "reset_key", "activation_key" }) {
+			String plan = jdbcTemplate.queryForObject(String.format("EXPLAIN SELECT id FROM account WHERE %s = 'julius'", column),
+					String.class);
+			log.debug("query plan for {}: {}", column, plan);
+			assertThat(plan).doesNotContain("tableScan");
+		}
+		assertThat(jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM account WHERE reset_key = 'julius'", String.class))
+				.containsIgnoringCase("idx_account_reset_key");
+		assertThat(jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM account WHERE activation_key = 'julius'", String.class))
+				.containsIgnoringCase("idx_account_activation_key");
+	}
+
+	@Test
+	public void testAuthoritiesAreFetchedWithoutExtraStatements() {
+		List<User> users = users(10, "graph");
+		users.forEach(user -> user.setAuthorities(Stream.of(new Authority("ROLE_USER")).collect(Collectors.toSet())));
+		// saveAll clears the persistence context, nothing below is cached
+		userRepository.saveAll(users);
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		statistics.clear();
+		try (Stream<User> all = userRepository.streamAll()) {
+			assertThat(all.mapToInt(user -> user.getAuthorities().size()).sum()).isEqualTo(12);
+		}
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+		statistics.clear();
+		User user = userRepository.findOneWithAuthoritiesByLogin("graph0").get();
+		assertThat(user.getAuthorities()).extracting(Authority::getName).containsExactly("ROLE_USER");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testSummaries() {
+		User user = userRepository.findOneByLogin("julius").get();
+		Optional<UserSummary> summary = userRepository.findSummaryById(user.getId());
+		assertThat(summary.get()).isEqualToIgnoringGivenFields(UserSummary.of(user), "createdDate");
+		assertThat(userRepository.findSummaryById("unknown")).isEmpty();
+
+		assertThat(userRepository.findSummaryPage(null, 10)).extracting(UserSummary::getLogin).containsExactly("julius");
+		assertThat(userRepository.findSummaryPage(user.getId(), 10)).isEmpty();
+		try (Stream<UserSummary> summaries = userRepository.streamAllSummaries()) {
+			assertThat(summaries.map(UserSummary::getEmail)).containsExactly("juliuskrah@gmail.com");
+		}
+	}
+
+	/**
+	 * @return {@code n} new users whose login is {@code prefix} followed by
+	 *         their index
+	 */
+	private static List<User> users(int n, String prefix) {
+		List<User> users = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			User user = new User();
+			user.setEmail(String.format("%s%d@localhost", prefix, i));
+			user.setLogin(String.format("%s%d", prefix, i));
+			user.setCreatedBy("system");
+			user.setPassword("$2a$10$mE.qmcV0mFU5NcKh73TZx.z4ueI/.bDWbj0T1BYyqP481kGGarKLG");
+			users.add(user);
+		}
+		return users;
+	}
 }
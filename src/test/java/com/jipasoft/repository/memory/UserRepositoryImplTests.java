@@ -0,0 +1,153 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.repository.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.jipasoft.domain.Authority;
+import com.jipasoft.domain.User;
+import com.jipasoft.domain.dto.UserSummary;
+
+public class UserRepositoryImplTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private UserRepositoryImpl userRepository;
+
+	@Before
+	public void setUp() {
+		userRepository = new UserRepositoryImpl();
+		User user = user("julius");
+		user.setResetKey("aw55asa7d5Sdcs8dAsa8");
+		user.setAuthorities(Stream.of(new Authority("ROLE_ADMIN"), new Authority("ROLE_USER")).collect(Collectors.toSet()));
+		userRepository.save(user);
+	}
+
+	@Test
+	public void testLookups() {
+		User user = userRepository.findOneByLogin("julius").get();
+		assertThat(userRepository.findOneByEmail("julius@localhost")).contains(user);
+		assertThat(userRepository.findOneByResetKey("aw55asa7d5Sdcs8dAsa8")).contains(user);
+		assertThat(userRepository.findOneById(user.getId())).contains(user);
+		assertThat(userRepository.findOneWithAuthoritiesByLogin("julius").get().getAuthorities()).hasSize(2);
+		assertThat(userRepository.findOneByLogin("unknown")).isEmpty();
+	}
+
+	@Test
+	public void testReturnsCopies() {
+		User user = userRepository.findOneByLogin("julius").get();
+		user.setFirstName("changed");
+		assertThat(userRepository.findOneByLogin("julius").get().getFirstName()).isNull();
+
+		userRepository.save(user);
+		assertThat(userRepository.findOneByLogin("julius").get().getFirstName()).isEqualTo("changed");
+	}
+
+	@Test
+	public void testUpdateReleasesOldKeys() {
+		User user = userRepository.findOneByLogin("julius").get();
+		user.setLogin("krah");
+		user.setResetKey(null);
+		userRepository.save(user);
+
+		assertThat(userRepository.findOneByLogin("julius")).isEmpty();
+		assertThat(userRepository.findOneByResetKey("aw55asa7d5Sdcs8dAsa8")).isEmpty();
+		assertThat(userRepository.findOneByLogin("krah")).contains(user);
+		User julius = user("julius");
+		julius.setEmail("juliuskrah@localhost");
+		userRepository.save(julius);
+	}
+
+	@Test
+	public void testUniqueConstraints() {
+		User login = user("julius");
+		login.setEmail("other@localhost");
+		try {
+			userRepository.save(login);
+			fail("duplicate login saved");
+		} catch (DataIntegrityViolationException e) {
+			// expected
+		}
+		User email = user("other");
+		email.setEmail("julius@localhost");
+		try {
+			userRepository.save(email);
+			fail("duplicate email saved");
+		} catch (DataIntegrityViolationException e) {
+			// expected
+		}
+		// nothing of the rejected users is left in the indexes
+		assertThat(userRepository.findAll()).hasSize(1);
+		assertThat(userRepository.findOneByEmail("other@localhost")).isEmpty();
+		assertThat(userRepository.findOneByLogin("other")).isEmpty();
+		userRepository.save(user("other"));
+	}
+
+	@Test
+	public void testPagingAndDelete() {
+		users(4, "user").forEach(userRepository::save);
+
+		List<User> first = userRepository.findPage(null, 3);
+		assertThat(first).hasSize(3);
+		List<UserSummary> second = userRepository.findSummaryPage(first.get(2).getId(), 3);
+		assertThat(second).hasSize(2);
+		assertThat(second.get(0).getId().compareTo(first.get(2).getId())).isPositive();
+
+		userRepository.delete(first.get(0));
+		userRepository.deleteAllById(second.stream().map(UserSummary::getId).collect(Collectors.toList()));
+		try (Stream<User> users = userRepository.streamAll()) {
+			assertThat(users.map(User::getId)).containsExactly(first.get(1).getId(), first.get(2).getId());
+		}
+		assertThat(userRepository.findOneByLogin(first.get(0).getLogin())).isEmpty();
+		userRepository.deleteAll();
+		assertThat(userRepository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("users.snapshot");
+		userRepository.snapshot(file);
+
+		UserRepositoryImpl restored = new UserRepositoryImpl();
+		restored.restore(file);
+		assertThat(restored.findOneByResetKey("aw55asa7d5Sdcs8dAsa8")).isEqualTo(userRepository.findOneByLogin("julius"));
+	}
+
+	private static List<User> users(int n, String prefix) {
+		return IntStream.range(0, n).mapToObj(i -> user(prefix + i)).collect(Collectors.toList());
+	}
+
+	private static User user(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@localhost");
+		user.setCreatedBy("system");
+		user.setPassword("$2a$10$mE.qmcV0mFU5NcKh73TZx.z4ueI/.bDWbj0T1BYyqP481kGGarKLG");
+		return user;
+	}
+}
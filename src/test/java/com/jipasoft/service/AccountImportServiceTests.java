@@ -0,0 +1,63 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.jipasoft.config.ApplicationTests;
+import com.jipasoft.domain.dto.ImportReport;
+import com.jipasoft.util.Profiles;
+
+@ActiveProfiles(Profiles.H2)
+@Transactional
+public class AccountImportServiceTests extends ApplicationTests {
+	private static final String HASH = "$2a$10$mE.qmcV0mFU5NcKh73TZx.z4ueI/.bDWbj0T1BYyqP481kGGarKLG";
+	@Autowired
+	private AccountImportService importService;
+	@Autowired
+	private AccountService accountService;
+
+	@Test
+	public void testDuplicateRows() throws Exception {
+		//@formatter:off
+		String csv = "login;password_hash;first_name;last_name;email;activated\n"
+				+ "julius;" + HASH + ";Julius;Krah;julius@localhost;true\n"
+				+ "julius;" + HASH + ";Julius;Krah;other@localhost;true\n"
+				+ "krah;" + HASH + ";;;JULIUS@localhost;true\n"
+				+ "system;" + HASH + ";;;new@localhost;true\n"
+				+ "jk;" + HASH + ";;;jk@localhost;false\n";
+		//@formatter:on
+		ImportReport report = importService.importAccounts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(report.getRead()).isEqualTo(5);
+		assertThat(report.getImported()).isEqualTo(2);
+		assertThat(report.getRejected()).isEqualTo(3);
+		assertThat(report.getErrors()).containsExactly("line 3: login julius is already in use",
+				"line 4: email JULIUS@localhost is already in use", "line 5: login system is already in use");
+		assertThat(accountService.findAccountByLogin("julius")).hasValueSatisfying(
+				user -> assertThat(user.getEmail()).isEqualTo("julius@localhost"));
+		assertThat(accountService.findAccountByLogin("jk")).isPresent();
+		assertThat(accountService.findAccountByLogin("krah")).isEmpty();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SingleFlightTests {
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentCallsShareOneCall() throws Exception {
+		SingleFlight<String, String> flight = new SingleFlight<>("test", 5_000, registry);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			results.add(executor.submit(() -> flight.execute("user1", () -> {
+				calls.incrementAndGet();
+				await(release);
+				return "user1";
+			})));
+		// the followers wait once the leader is in its call
+		while (calls.get() == 0)
+			Thread.sleep(1);
+		Thread.sleep(100);
+		release.countDown();
+
+		for (Future<String> result : results)
+			assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("user1");
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(registry.counter("singleflight.calls", "name", "test", "result", "deduplicated").count()).isEqualTo(3);
+	}
+
+	@Test
+	public void testTimedOutCallerCallsItself() throws Exception {
+		SingleFlight<String, String> flight = new SingleFlight<>("test", 10, registry);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		Future<String> leader = executor.submit(() -> flight.execute("user1", () -> {
+			started.countDown();
+			await(release);
+			return "leader";
+		}));
+		started.await();
+
+		assertThat(flight.execute("user1", () -> "follower")).isEqualTo("follower");
+		release.countDown();
+		assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+		assertThat(registry.counter("singleflight.calls", "name", "test", "result", "timeout").count()).isEqualTo(1);
+		// the key is free again once the leader is done
+		assertThat(flight.execute("user1", () -> "next")).isEqualTo("next");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.jipasoft.config.security.ApiTokenService;
+
+public class ApiTokenControllerTests {
+	private final ApiTokenService tokenService = new ApiTokenService(
+			"0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8), 60);
+	private final ApiTokenController controller = new ApiTokenController(tokenService);
+
+	@Test
+	public void testBasicLoginGetsToken() {
+		Map<String, Object> token = controller.issue(new UsernamePasswordAuthenticationToken("admin", "admin",
+				AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+		assertThat(token).containsEntry("token_type", "Bearer").containsEntry("expires_in", 60L);
+		assertThat(tokenService.authenticate((String) token.get("access_token")).getName()).isEqualTo("admin");
+	}
+
+	@Test
+	public void testBearerTokenCannotMintAnother() {
+		String token = tokenService.issue("admin", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		Authentication bearer = tokenService.authenticate(token);
+		try {
+			controller.issue(bearer);
+			fail("a bearer token was renewed");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatus()).isEqualTo(HttpStatus.FORBIDDEN);
+		}
+	}
+}
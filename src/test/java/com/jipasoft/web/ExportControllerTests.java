@@ -0,0 +1,100 @@
+/*
+* Copyright 2016, Julius Krah
+* by the @authors tag. See the LICENCE in the distribution for a
+* full listing of individual contributors.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* http://www.apache.org/licenses/LICENSE-2.0
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jipasoft.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.jipasoft.domain.User;
+import com.jipasoft.service.AccountService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ExportControllerTests {
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private ExportController controller;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		User user = new User();
+		user.setId("1");
+		user.setLogin("julius");
+		user.setFirstName("Julius");
+		user.setLastName("Krah;\r\nJr \"JK\"");
+		user.setEmail("julius@localhost");
+		user.setActivated(true);
+		user.setCreatedBy("system");
+		user.setCreatedDate(ZonedDateTime.of(2018, 4, 1, 12, 0, 0, 0, ZoneOffset.UTC));
+		AccountService accountService = mock(AccountService.class);
+		doAnswer(invocation -> {
+			((Consumer<User>) invocation.getArgument(0)).accept(user);
+			return null;
+		}).when(accountService).forEachAccount(any());
+		controller = new ExportController(accountService, Jackson2ObjectMapperBuilder.json().build(), registry);
+	}
+
+	@Test
+	public void testCsv() throws Exception {
+		assertThat(export("csv")).isEqualTo("id;login;first_name;last_name;email;activated;created_by;created_date\n"
+				+ "1;julius;Julius;\"Krah;\r\nJr \"\"JK\"\"\";julius@localhost;true;system;2018-04-01T12:00Z\n");
+		assertThat(registry.counter("accounts.export.rows", "format", "csv").count()).isEqualTo(1);
+		assertThat(registry.get("accounts.export.bytes").tag("format", "csv").summary().totalAmount()).isPositive();
+	}
+
+	@Test
+	public void testNdjson() throws Exception {
+		String export = export("NDJSON");
+		assertThat(export).endsWith("\n").contains("\"login\":\"julius\"").doesNotContain("password");
+		assertThat(export.split("\n")).hasSize(1);
+		assertThat(registry.get("accounts.export").tag("format", "ndjson").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void testUnknownFormat() {
+		try {
+			controller.export("xml");
+			fail("xml was accepted");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	private String export(String format) throws Exception {
+		ResponseEntity<StreamingResponseBody> response = controller.export(format);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getBody().writeTo(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}